@@ -0,0 +1,269 @@
+// JitterBufferedPlayer.java
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.SourceDataLine;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Plays a WAV/AIFF stream through three decoupled stages, so that short network
+// stalls are absorbed instead of reaching the speaker:
+//   1. a network reader thread filling a ring buffer,
+//   2. a decoder thread turning the buffered bytes into PCM chunks,
+//   3. the audio output stage (the calling thread) writing PCM to the line.
+// Playback starts once the ring buffer holds the pre-roll target. When the output
+// stage has no PCM ready before the line has played what it holds, it counts an
+// underrun, raises the pre-roll target and rebuffers.
+//
+// Sizes can be set with -Dmusicclient.buffer.kb=<n> (ring buffer capacity) and
+// -Dmusicclient.preroll.kb=<n> (initial pre-roll target).
+public class JitterBufferedPlayer {
+
+    public static final int DEFAULT_BUFFER_BYTES = Integer.getInteger("musicclient.buffer.kb", 2048) * 1024;
+    public static final int DEFAULT_PREROLL_BYTES = Integer.getInteger("musicclient.preroll.kb", 128) * 1024;
+    private static final int CHUNK_SIZE = 4096;
+    // Decoded PCM chunks waiting for the output stage.
+    private static final int PCM_QUEUE_CHUNKS = 32;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final InputStream network;
+    private final String name;
+    private final RingBuffer ring;
+    private final BlockingQueue<byte[]> pcmQueue = new ArrayBlockingQueue<>(PCM_QUEUE_CHUNKS);
+    private final CompletableFuture<AudioFormat> format = new CompletableFuture<>();
+    private volatile Exception decoderError;
+
+    public JitterBufferedPlayer(InputStream network, String name, int bufferBytes, int prerollBytes) {
+        this.network = network;
+        this.name = name;
+        this.ring = new RingBuffer(bufferBytes, Math.min(prerollBytes, bufferBytes / 2));
+    }
+
+    // Play the stream to the end. Blocks the calling thread, which acts as the output stage.
+    public void play() throws Exception {
+        Thread reader = new Thread(this::readNetwork, "jitter-reader");
+        Thread decoder = new Thread(this::decode, "jitter-decoder");
+        reader.setDaemon(true);
+        decoder.setDaemon(true);
+        reader.start();
+        decoder.start();
+        SourceDataLine speaker = null;
+        try {
+            AudioFormat audioFormat = format.get();
+            DataLine.Info info = new DataLine.Info(SourceDataLine.class, audioFormat);
+            speaker = (SourceDataLine) AudioSystem.getLine(info);
+            speaker.open(audioFormat);
+            speaker.start();
+            byte[] chunk = pcmQueue.take();
+            while (chunk != END_OF_STREAM) {
+                speaker.write(chunk, 0, chunk.length);
+                // Silence is only heard once the line has played everything it holds.
+                chunk = pcmQueue.poll(queuedMillis(speaker, audioFormat), TimeUnit.MILLISECONDS);
+                if (chunk == null) {
+                    ring.underrun();
+                    chunk = pcmQueue.take();
+                }
+            }
+            if (decoderError != null) {
+                throw decoderError;
+            }
+            speaker.drain();
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        } finally {
+            if (speaker != null) {
+                speaker.close();
+            }
+            // Unblocks the other stages if playback stopped early.
+            ring.close();
+            decoder.interrupt();
+        }
+    }
+
+    // Playing time of the audio written to the line but not yet played.
+    private static long queuedMillis(SourceDataLine speaker, AudioFormat audioFormat) {
+        int queuedBytes = speaker.getBufferSize() - speaker.available();
+        float bytesPerSecond = audioFormat.getFrameRate() * Math.max(1, audioFormat.getFrameSize());
+        if (bytesPerSecond <= 0) return 0;
+        return (long) (queuedBytes * 1000L / bytesPerSecond);
+    }
+
+    public int getUnderruns() {
+        return ring.underruns();
+    }
+
+    // Current pre-roll target in bytes, raised after underruns.
+    public int getPrerollBytes() {
+        return ring.prerollBytes();
+    }
+
+    // Fill level of the ring buffer, from 0.0 (empty) to 1.0 (full).
+    public double getBufferHealth() {
+        return ring.fillRatio();
+    }
+
+    public String metricsSummary() {
+        return "underruns=" + getUnderruns() + ", preroll=" + getPrerollBytes() / 1024 + " KB" +
+               ", buffer=" + Math.round(getBufferHealth() * 100) + "% full";
+    }
+
+    // Stage 1: copy network bytes into the ring buffer.
+    private void readNetwork() {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try {
+            int count;
+            while ((count = network.read(buffer)) != -1) {
+                if (!ring.write(buffer, 0, count)) {
+                    return;
+                }
+            }
+            ring.finish(null);
+        } catch (IOException e) {
+            ring.finish(e);
+        } catch (InterruptedException e) {
+            ring.finish(new IOException("Network reader interrupted", e));
+        }
+    }
+
+    // Stage 2: decode the buffered stream into PCM chunks.
+    private void decode() {
+        try {
+            AudioInputStream audioStream = AudioSystem.getAudioInputStream(new BufferedInputStream(ring.inputStream()));
+            format.complete(audioStream.getFormat());
+            int frameSize = Math.max(1, audioStream.getFormat().getFrameSize());
+            byte[] buffer = new byte[CHUNK_SIZE - CHUNK_SIZE % frameSize];
+            int count;
+            while ((count = audioStream.read(buffer, 0, buffer.length)) != -1) {
+                if (count == 0) continue;
+                byte[] chunk = new byte[count];
+                System.arraycopy(buffer, 0, chunk, 0, count);
+                pcmQueue.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            return;
+        } catch (Exception e) {
+            decoderError = e;
+            format.completeExceptionally(e);
+        }
+        try {
+            pcmQueue.put(END_OF_STREAM);
+        } catch (InterruptedException ignore) {}
+    }
+
+    // Byte ring buffer shared by the network reader and the decoder.
+    private class RingBuffer {
+        private final byte[] data;
+        private int readPos;
+        private int count;
+        private boolean eof;
+        private boolean closed;
+        private IOException error;
+        private int prerollBytes;
+        private boolean buffering = true;
+        private int underruns;
+
+        RingBuffer(int capacity, int prerollBytes) {
+            this.data = new byte[capacity];
+            this.prerollBytes = prerollBytes;
+        }
+
+        // Returns false once the consumer has closed the buffer.
+        synchronized boolean write(byte[] b, int off, int len) throws InterruptedException {
+            while (len > 0) {
+                while (count == data.length && !closed) {
+                    wait();
+                }
+                if (closed) return false;
+                int writePos = (readPos + count) % data.length;
+                int n = Math.min(len, Math.min(data.length - count, data.length - writePos));
+                System.arraycopy(b, off, data, writePos, n);
+                count += n;
+                off += n;
+                len -= n;
+                notifyAll();
+            }
+            return true;
+        }
+
+        synchronized void finish(IOException error) {
+            this.eof = true;
+            this.error = error;
+            notifyAll();
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        synchronized int read(byte[] b, int off, int len) throws IOException {
+            try {
+                while (true) {
+                    if (closed) return -1;
+                    if (buffering) {
+                        if (count < prerollBytes && !eof) {
+                            wait();
+                            continue;
+                        }
+                        buffering = false;
+                    }
+                    if (count > 0) {
+                        int n = Math.min(len, Math.min(count, data.length - readPos));
+                        System.arraycopy(data, readPos, b, off, n);
+                        readPos = (readPos + n) % data.length;
+                        count -= n;
+                        notifyAll();
+                        return n;
+                    }
+                    // Bytes received before a network error are still played.
+                    if (error != null) throw error;
+                    if (eof) return -1;
+                    // The decoder may run ahead of the speaker; only the output stage
+                    // knows whether running dry is audible.
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Decoder interrupted", e);
+            }
+        }
+
+        // The speaker ran out of audio mid-stream: raise the target so the next stall
+        // is absorbed, and hold the decoder back until it is reached.
+        synchronized void underrun() {
+            underruns++;
+            prerollBytes = Math.min(prerollBytes * 3 / 2, data.length / 2);
+            buffering = true;
+            notifyAll();
+            System.out.println("[Client] Buffer underrun #" + underruns + " while playing " + name +
+                               "; rebuffering to " + prerollBytes / 1024 + " KB");
+        }
+
+        synchronized int underruns() { return underruns; }
+        synchronized int prerollBytes() { return prerollBytes; }
+        synchronized double fillRatio() { return (double) count / data.length; }
+
+        InputStream inputStream() {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] one = new byte[1];
+                    return RingBuffer.this.read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (len == 0) return 0;
+                    return RingBuffer.this.read(b, off, len);
+                }
+            };
+        }
+    }
+}
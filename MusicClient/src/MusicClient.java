@@ -3,11 +3,6 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import javazoom.jl.player.Player;  // For MP3 playback via JLayer
 
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.DataLine;
-import javax.sound.sampled.SourceDataLine;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -49,6 +44,8 @@ public class MusicClient extends JFrame {
     private JTable table;
     private SongTableModel tableModel;
     private JTextField filterField;
+    // Pre-roll target for native-format playback, adapted after underruns.
+    private volatile int prerollBytes = JitterBufferedPlayer.DEFAULT_PREROLL_BYTES;
 
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
@@ -133,6 +130,9 @@ public class MusicClient extends JFrame {
         JButton filterBtn = new JButton("Filter");
         filterBtn.addActionListener((ActionEvent e) -> filterTable());
         filterPanel.add(filterBtn);
+        JButton refreshBtn = new JButton("Refresh");
+        refreshBtn.addActionListener((ActionEvent e) -> fetchSongList());
+        filterPanel.add(refreshBtn);
         topPanel.add(filterPanel, BorderLayout.NORTH);
         add(topPanel, BorderLayout.NORTH);
         
@@ -181,6 +181,15 @@ public class MusicClient extends JFrame {
             List<Song> songs = gson.fromJson(json, listType);
             tableModel.setSongs(songs);
             System.out.println("[Client] Fetched " + songs.size() + " songs from server.");
+            // Newer servers follow the list with their indexing progress.
+            String statusJson = in.readLine();
+            IndexStatus status = statusJson == null ? null : gson.fromJson(statusJson, IndexStatus.class);
+            if (status != null && status.indexing) {
+                setTitle("Music Client - server indexing (" + status.processed + "/" + status.discovered +
+                         " files), press Refresh for more");
+            } else {
+                setTitle("Music Client");
+            }
         } catch (Exception e) {
             System.err.println("[Client] Error fetching song list:");
             e.printStackTrace();
@@ -242,19 +251,15 @@ public class MusicClient extends JFrame {
                 return;
             } else {
                 System.out.println("[Client] Playing native format: " + song.getTitle());
-                AudioInputStream audioStream = AudioSystem.getAudioInputStream(in);
-                AudioFormat format = audioStream.getFormat();
-                DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
-                SourceDataLine speaker = (SourceDataLine) AudioSystem.getLine(info);
-                speaker.open(format);
-                speaker.start();
-                byte[] buffer = new byte[4096];
-                int bytesRead;
-                while ((bytesRead = audioStream.read(buffer, 0, buffer.length)) != -1) {
-                    speaker.write(buffer, 0, bytesRead);
+                JitterBufferedPlayer player = new JitterBufferedPlayer(in, song.getTitle(),
+                        JitterBufferedPlayer.DEFAULT_BUFFER_BYTES, prerollBytes);
+                try {
+                    player.play();
+                } finally {
+                    // Start the next song with the pre-roll this one settled on.
+                    prerollBytes = player.getPrerollBytes();
+                    System.out.println("[Client] Playback stats for " + song.getTitle() + ": " + player.metricsSummary());
                 }
-                speaker.drain();
-                speaker.close();
             }
         } catch (Exception e) {
             System.err.println("[Client] Error playing song " + song.getTitle() + ":");
@@ -309,7 +314,7 @@ public class MusicClient extends JFrame {
     // ------------- Inner Classes --------------
     
     public static class Song {
-        private int id;
+        private String id;
         private String title;
         private String album;
         private String genre;
@@ -324,7 +329,7 @@ public class MusicClient extends JFrame {
         private String fileName;
         private String albumImageBase64;
         
-        public int getId() { return id; }
+        public String getId() { return id; }
         public String getTitle() { return title; }
         public String getAlbum() { return album; }
         public String getGenre() { return genre; }
@@ -339,6 +344,13 @@ public class MusicClient extends JFrame {
         public String getAlbumImageBase64() { return albumImageBase64; }
     }
     
+    // Indexing progress line sent by the server after the song list.
+    public static class IndexStatus {
+        private boolean indexing;
+        private int processed;
+        private int discovered;
+    }
+    
     public static class SongTableModel extends AbstractTableModel {
         // 14 columns are defined.
         private String[] columnNames = { 
@@ -0,0 +1,275 @@
+// BroadcastChannel.java
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// A radio-style channel: one reader thread plays the channel's playlist in real
+// time into a shared ring buffer, and every tuned-in connection sends from that
+// buffer at its own position. Subscribers write straight out of the ring, so a
+// listener costs one socket write per chunk. The ring holds enough audio that
+// bytes handed to a subscriber are not overwritten before a stalled write is
+// detected. A subscriber that falls too far behind is skipped forward; one that
+// keeps lagging, or whose socket write stalls, is dropped so it never holds back
+// the others.
+//
+// Subscribers join a little behind the live position so their decoder gets a
+// burst to pre-roll with. Joining mid-stream only suits self-synchronising
+// formats, which is why the default channel only carries MP3 files.
+class BroadcastChannel {
+
+    // Opens the audio of a song for the channel reader.
+    interface SongSource {
+        InputStream open(Song song) throws IOException;
+    }
+
+    private static final int MIN_RING_BYTES = 1024 * 1024;
+    private static final int CHUNK_SIZE = 4096;
+    // Seconds of audio the reader runs ahead of real time, given to new listeners as a burst.
+    private static final int LEAD_SECONDS = 2;
+    // Used when a song has no usable track length (128 kbit/s).
+    private static final long DEFAULT_BYTES_PER_SECOND = 16 * 1024;
+    private static final int MAX_SKIPS = 3;
+    private static final int STALLED_WRITE_SECONDS = 5;
+    private static final long STALLED_WRITE_NANOS = STALLED_WRITE_SECONDS * 1_000_000_000L;
+
+    private final String name;
+    private final Supplier<List<Song>> playlist;
+    private final SongSource source;
+    // Grown, never shrunk, when a song with a higher byte rate starts.
+    private byte[] ring = new byte[MIN_RING_BYTES];
+    // Total bytes ever written; the ring holds the last ring.length of them.
+    private long writePos;
+    private long bytesPerSecond = DEFAULT_BYTES_PER_SECOND;
+    private long leadBytes = DEFAULT_BYTES_PER_SECOND * LEAD_SECONDS;
+    private int playlistIndex;
+    private Thread reader;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    public BroadcastChannel(String name, Supplier<List<Song>> playlist, SongSource source) {
+        this.name = name;
+        this.playlist = playlist;
+        this.source = source;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getListenerCount() {
+        return subscribers.size();
+    }
+
+    // Join the channel. The connection is closed if the subscriber has to be dropped.
+    public synchronized Subscriber subscribe(Closeable connection) {
+        Subscriber subscriber = new Subscriber(connection, Math.max(0, writePos - leadBytes));
+        subscribers.add(subscriber);
+        if (reader == null) {
+            reader = new Thread(this::runReader, "channel-" + name);
+            reader.setDaemon(true);
+            reader.start();
+        }
+        return subscriber;
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    // Wait until data is available for the subscriber and return how many bytes can
+    // be sent from subscriber.sendBuffer() at subscriber.sendOffset(), or -1 if the
+    // subscriber was dropped.
+    public synchronized int awaitData(Subscriber subscriber, int max) throws InterruptedException {
+        while (true) {
+            if (subscriber.dropped) return -1;
+            long lag = writePos - subscriber.position;
+            // Bytes handed out must survive a write of up to STALLED_WRITE_SECONDS,
+            // so a subscriber whose data is about to be overwritten is already lagging.
+            if (lag > ring.length - bytesPerSecond * STALLED_WRITE_SECONDS) {
+                if (!skipForward(subscriber, lag)) return -1;
+                continue;
+            }
+            if (lag > 0) {
+                int offset = (int) (subscriber.position % ring.length);
+                subscriber.sendBuffer = ring;
+                subscriber.sendOffset = offset;
+                subscriber.writingSince = System.nanoTime();
+                return (int) Math.min(Math.min(lag, max), ring.length - offset);
+            }
+            wait();
+        }
+    }
+
+    // Mark bytes returned by awaitData as sent. If the reader overwrote them while
+    // the write was in progress the listener got torn audio, so it is moved forward.
+    public synchronized void advance(Subscriber subscriber, int count) {
+        subscriber.writingSince = 0;
+        if (subscriber.sendBuffer == ring && writePos - subscriber.position > ring.length) {
+            skipForward(subscriber, writePos - subscriber.position);
+            return;
+        }
+        subscriber.position += count;
+    }
+
+    // Jump a lagging subscriber to just behind the live position rather than stall
+    // the channel. Returns false if it was dropped for lagging too often.
+    private boolean skipForward(Subscriber subscriber, long lag) {
+        subscriber.skips++;
+        if (subscriber.skips > MAX_SKIPS) {
+            drop(subscriber, "kept falling behind");
+            return false;
+        }
+        System.out.println("[Server] Channel " + name + ": listener lagged " + lag / 1024 +
+                           " KB, skipping forward");
+        subscriber.position = Math.max(0, writePos - leadBytes);
+        return true;
+    }
+
+    private void runReader() {
+        System.out.println("[Server] Channel " + name + " on air.");
+        byte[] chunk = new byte[CHUNK_SIZE];
+        // Channel clock: seconds of audio published since the reader started.
+        long clockStart = System.nanoTime();
+        double audioSeconds = 0;
+        while (!subscribers.isEmpty()) {
+            List<Song> songs = playlist.get();
+            if (songs.isEmpty()) {
+                // Nothing to play yet, e.g. indexing is still running.
+                sleepQuietly(1000);
+                clockStart = System.nanoTime();
+                audioSeconds = 0;
+                continue;
+            }
+            Song song = songs.get(playlistIndex++ % songs.size());
+            System.out.println("[Server] Channel " + name + " now playing: " + song.getTitle());
+            try (InputStream in = source.open(song)) {
+                long songBytesPerSecond = bytesPerSecond(song);
+                setRate(songBytesPerSecond);
+                int count;
+                while (!subscribers.isEmpty() && (count = in.read(chunk)) > 0) {
+                    dropStalledSubscribers();
+                    publish(chunk, count);
+                    audioSeconds += (double) count / songBytesPerSecond;
+                    // Pace to real time, staying LEAD_SECONDS ahead.
+                    long dueNanos = clockStart + (long) ((audioSeconds - LEAD_SECONDS) * 1e9);
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        sleepQuietly(waitNanos / 1_000_000);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("[Server] Channel " + name + " could not play " + song.getTitle() + ": " + e.getMessage());
+                sleepQuietly(1000);
+            }
+        }
+        synchronized (this) {
+            reader = null;
+            // A listener may have joined between the empty check and here.
+            if (!subscribers.isEmpty()) {
+                reader = new Thread(this::runReader, "channel-" + name);
+                reader.setDaemon(true);
+                reader.start();
+                return;
+            }
+        }
+        System.out.println("[Server] Channel " + name + " off air (no listeners).");
+    }
+
+    // Switch to the byte rate of the next song, growing the ring to hold the lead,
+    // the stalled-write allowance of bytes handed out, and the same again as slack.
+    private synchronized void setRate(long songBytesPerSecond) {
+        bytesPerSecond = songBytesPerSecond;
+        leadBytes = songBytesPerSecond * LEAD_SECONDS;
+        long needed = songBytesPerSecond * (LEAD_SECONDS + 2L * STALLED_WRITE_SECONDS);
+        if (needed <= ring.length) return;
+        // Subscribers still writing from the old array keep it; it is no longer written.
+        byte[] grown = new byte[(int) Math.min(needed, Integer.MAX_VALUE - 8)];
+        long from = Math.max(0, writePos - ring.length);
+        for (long pos = from; pos < writePos; ) {
+            int oldOffset = (int) (pos % ring.length);
+            int newOffset = (int) (pos % grown.length);
+            int count = (int) Math.min(writePos - pos, Math.min(ring.length - oldOffset, grown.length - newOffset));
+            System.arraycopy(ring, oldOffset, grown, newOffset, count);
+            pos += count;
+        }
+        ring = grown;
+        System.out.println("[Server] Channel " + name + ": ring buffer grown to " + grown.length / 1024 + " KB");
+    }
+
+    private synchronized void publish(byte[] chunk, int count) {
+        int offset = (int) (writePos % ring.length);
+        int first = Math.min(count, ring.length - offset);
+        System.arraycopy(chunk, 0, ring, offset, first);
+        System.arraycopy(chunk, first, ring, 0, count - first);
+        writePos += count;
+        notifyAll();
+    }
+
+    private void dropStalledSubscribers() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            long since = subscriber.writingSince;
+            if (since != 0 && now - since > STALLED_WRITE_NANOS) {
+                synchronized (this) {
+                    drop(subscriber, "socket write stalled");
+                }
+            }
+        }
+    }
+
+    private void drop(Subscriber subscriber, String reason) {
+        if (subscriber.dropped) return;
+        subscriber.dropped = true;
+        subscribers.remove(subscriber);
+        System.out.println("[Server] Channel " + name + ": dropping listener (" + reason + ")");
+        try {
+            subscriber.connection.close();
+        } catch (IOException ignore) {}
+        notifyAll();
+    }
+
+    private static long bytesPerSecond(Song song) {
+        if (song.getTrackLength() > 0 && !song.isRemote()) {
+            long size = new File(song.getFilePath()).length();
+            if (size > 0) return Math.max(1, size / song.getTrackLength());
+        }
+        return DEFAULT_BYTES_PER_SECOND;
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // One tuned-in connection and its position in the channel.
+    static class Subscriber {
+        private final Closeable connection;
+        private long position;
+        // Array and offset of the bytes handed out by the last awaitData.
+        private byte[] sendBuffer;
+        private int sendOffset;
+        private int skips;
+        private volatile long writingSince;
+        private volatile boolean dropped;
+
+        private Subscriber(Closeable connection, long position) {
+            this.connection = connection;
+            this.position = position;
+        }
+
+        byte[] sendBuffer() {
+            return sendBuffer;
+        }
+
+        int sendOffset() {
+            return sendOffset;
+        }
+    }
+}
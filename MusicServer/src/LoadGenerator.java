@@ -0,0 +1,580 @@
+// LoadGenerator.java
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Headless load test for MusicServer. Simulates many concurrent clients speaking
+// the LIST/STREAM/DOWNLOAD protocol, each looping think time -> request. Some
+// STREAM listeners hang up part way through the song, like a user skipping a
+// track. Reports throughput, time to first byte percentiles and errors.
+//
+// By default it generates a corpus of synthetic WAV files and runs a headless
+// MusicServer in the same process on loopback; --no-server targets a running one.
+//
+//   java -cp MusicServer.jar:MusicServer/lib/gson.jar:MusicServer/lib/jaudiotagger.jar LoadGenerator \
+//        --clients 1000 --duration 60 --mix list=10,stream=70,download=20
+//
+//   --host <host>            server host (default 127.0.0.1)
+//   --port <n>               server port (default 5599)
+//   --no-server              do not start an in-process server or generate a corpus
+//   --clients <n>            concurrent simulated clients (default 200)
+//   --duration <s>           length of the measured run (default 60)
+//   --ramp <s>               spread client start-up over this many seconds (default 10)
+//   --mix <op=w,...>         weights of list, stream and download (default list=10,stream=70,download=20)
+//   --think-ms <n>           mean think time between requests, exponential (default 1000)
+//   --partial <p>            probability that a listener hangs up early (default 0.3)
+//   --listen-kbps <n>        STREAM clients read at this rate, as a player would (default 0 = unpaced)
+//   --corpus-dir <dir>       where the synthetic files go (default loadtest_corpus)
+//   --corpus-files <n>       number of synthetic songs (default 40)
+//   --corpus-seconds <n>     length of each synthetic song (default 20)
+//   --verbose-server         keep the in-process server's log output
+//   -- <server options>      anything after "--" is passed to the in-process server
+public class LoadGenerator {
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final int PROGRESS_INTERVAL_MS = 5000;
+    // Synthetic songs: 16-bit mono PCM at 22.05 kHz, about 43 KB per second.
+    private static final int SAMPLE_RATE = 22050;
+    // Used to estimate song sizes when the file is not visible locally (128 kbit/s).
+    private static final long DEFAULT_BYTES_PER_SECOND = 16 * 1024;
+
+    enum Op { LIST, STREAM, DOWNLOAD }
+
+    private String host = "127.0.0.1";
+    private int port = 5599;
+    private boolean startServer = true;
+    private boolean verboseServer;
+    private final List<String> serverArgs = new ArrayList<>();
+    private int clients = 200;
+    private int durationSeconds = 60;
+    private int rampSeconds = 10;
+    private final Map<Op, Integer> mix = new EnumMap<>(Op.class);
+    private int thinkMillis = 1000;
+    private double partialProbability = 0.3;
+    private long listenBytesPerSecond;
+    private File corpusDir = new File("loadtest_corpus");
+    private int corpusFiles = 40;
+    private int corpusSeconds = 20;
+
+    // The report goes here; System.out may be silenced to hide the server's log.
+    private final PrintStream report = System.out;
+    private final Gson gson = new Gson();
+    private List<Song> catalog = Collections.emptyList();
+    private volatile boolean running = true;
+    private final AtomicInteger activeClients = new AtomicInteger();
+    private final LongAdder bytesReceived = new LongAdder();
+    // Filled once in the constructor and never modified, so client threads can read it.
+    private final Map<Op, OpStats> stats = new EnumMap<>(Op.class);
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    public LoadGenerator() {
+        mix.put(Op.LIST, 10);
+        mix.put(Op.STREAM, 70);
+        mix.put(Op.DOWNLOAD, 20);
+        for (Op op : Op.values()) {
+            stats.put(op, new OpStats());
+        }
+    }
+
+    public static void main(String[] args) {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[Load] Invalid configuration: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        try {
+            generator.run();
+        } catch (IOException e) {
+            System.err.println("[Load] " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--")) {
+                serverArgs.addAll(Arrays.asList(args).subList(i + 1, args.length));
+                break;
+            } else if (arg.equals("--no-server")) {
+                startServer = false;
+                continue;
+            } else if (arg.equals("--verbose-server")) {
+                verboseServer = true;
+                continue;
+            }
+            if (!arg.startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Unknown or incomplete option: " + arg);
+            }
+            String value = args[++i];
+            try {
+                switch (arg) {
+                    case "--host": host = value; break;
+                    case "--port": port = Integer.parseInt(value); break;
+                    case "--clients": clients = Integer.parseInt(value); break;
+                    case "--duration": durationSeconds = Integer.parseInt(value); break;
+                    case "--ramp": rampSeconds = Integer.parseInt(value); break;
+                    case "--mix": parseMix(value); break;
+                    case "--think-ms": thinkMillis = Integer.parseInt(value); break;
+                    case "--partial": partialProbability = Double.parseDouble(value); break;
+                    case "--listen-kbps": listenBytesPerSecond = Integer.parseInt(value) * 1024L; break;
+                    case "--corpus-dir": corpusDir = new File(value); break;
+                    case "--corpus-files": corpusFiles = Integer.parseInt(value); break;
+                    case "--corpus-seconds": corpusSeconds = Integer.parseInt(value); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number for " + arg + ": " + value);
+            }
+        }
+        if (clients < 1 || durationSeconds < 1 || corpusFiles < 1 || corpusSeconds < 1) {
+            throw new IllegalArgumentException("--clients, --duration, --corpus-files and --corpus-seconds must be positive");
+        }
+    }
+
+    private void parseMix(String value) {
+        mix.clear();
+        for (Op op : Op.values()) {
+            mix.put(op, 0);
+        }
+        for (String part : value.split(",")) {
+            String[] pair = part.split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected op=weight in --mix but got: " + part);
+            }
+            mix.put(Op.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("--mix needs at least one positive weight");
+        }
+    }
+
+    public void run() throws IOException {
+        if (startServer) {
+            generateCorpus();
+            startEmbeddedServer();
+        }
+        catalog = waitForCatalog();
+        if (catalog.isEmpty() && (mix.get(Op.STREAM) > 0 || mix.get(Op.DOWNLOAD) > 0)) {
+            throw new IOException("Server at " + host + ":" + port + " has no songs to stream");
+        }
+        report.println("[Load] Catalog has " + catalog.size() + " songs. Starting " + clients + " clients over " +
+                       rampSeconds + " s, measuring for " + durationSeconds + " s.");
+
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            // Small stacks, so thousands of client threads fit comfortably.
+            Thread thread = new Thread(null, this::runClient, "load-client-" + i, 256 * 1024);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        Thread progressThread = new Thread(() -> printProgress(start), "load-progress");
+        progressThread.setDaemon(true);
+        progressThread.start();
+        for (int i = 0; i < threads.size(); i++) {
+            long due = start + (long) i * rampSeconds * 1_000_000_000L / clients;
+            sleepUntil(due);
+            threads.get(i).start();
+        }
+        // Counters restart once every client is up, so the report covers the steady state.
+        sleepUntil(start + rampSeconds * 1_000_000_000L);
+        resetCounters();
+        long measureStart = System.nanoTime();
+        sleepUntil(measureStart + durationSeconds * 1_000_000_000L);
+        running = false;
+        long measuredNanos = System.nanoTime() - measureStart;
+        for (Thread thread : threads) {
+            try {
+                thread.join(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        printReport(measuredNanos / 1e9);
+    }
+
+    // One simulated user: think, pick a request from the mix, repeat.
+    private void runClient() {
+        activeClients.incrementAndGet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            while (running) {
+                // Exponential think time, as between independent user actions.
+                long think = (long) (-thinkMillis * Math.log(1 - random.nextDouble()));
+                if (think > 0 && !sleepWhileRunning(think)) break;
+                Op op = pickOp(random);
+                long begin = System.nanoTime();
+                try {
+                    switch (op) {
+                        case LIST: list(begin); break;
+                        case STREAM: transfer(op, randomSong(random), random.nextDouble() < partialProbability, begin); break;
+                        case DOWNLOAD: transfer(op, randomSong(random), false, begin); break;
+                    }
+                } catch (ConnectException e) {
+                    error(op, "connect refused");
+                } catch (SocketTimeoutException e) {
+                    // "Connect timed out" when the accept backlog overflows, "Read timed out" otherwise.
+                    error(op, "timeout: " + e.getMessage());
+                } catch (IOException e) {
+                    error(op, e.getClass().getSimpleName() + ": " + e.getMessage());
+                } catch (RuntimeException e) {
+                    error(op, "bad reply: " + e.getMessage());
+                }
+            }
+        } finally {
+            activeClients.decrementAndGet();
+        }
+    }
+
+    private void list(long begin) throws IOException {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write("LIST\n".getBytes(StandardCharsets.UTF_8));
+            CountingInputStream in = new CountingInputStream(socket.getInputStream());
+            int first = in.read();
+            if (first == -1) throw new EOFException("empty LIST reply");
+            long firstByte = System.nanoTime();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String json = (char) first + reader.readLine();
+            gson.fromJson(json, new TypeToken<List<Song>>() {}.getType());
+            reader.readLine();
+            if (running) record(Op.LIST, firstByte - begin, in.count);
+        }
+    }
+
+    // STREAM or DOWNLOAD one song. A partial listener hangs up after a random part of it.
+    private void transfer(Op op, Song song, boolean partial, long begin) throws IOException {
+        long expected = expectedBytes(song);
+        long budget = partial ? (long) (expected * ThreadLocalRandom.current().nextDouble(0.05, 0.9)) : Long.MAX_VALUE;
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write((op.name() + " " + song.getId() + "\n").getBytes(StandardCharsets.UTF_8));
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[16 * 1024];
+            int count = in.read(buffer);
+            if (count <= 0) throw new EOFException("no data for song " + song.getId());
+            long firstByte = System.nanoTime();
+            long total = 0;
+            long paceStart = firstByte;
+            do {
+                total += count;
+                bytesReceived.add(count);
+                if (total >= budget || !running) break;
+                if (op == Op.STREAM && listenBytesPerSecond > 0) {
+                    // Read like a player draining its buffer in real time.
+                    long due = paceStart + total * 1_000_000_000L / listenBytesPerSecond;
+                    sleepUntil(due);
+                }
+            } while ((count = in.read(buffer, 0, (int) Math.min(buffer.length, budget - total))) > 0);
+            if (!running) return;
+            if (!partial && new File(song.getFilePath()).exists() && total != expected) {
+                throw new EOFException("short transfer: " + total + " of " + expected + " bytes");
+            }
+            record(op, firstByte - begin, 0);
+            if (partial) stats.get(op).partial.increment();
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    private Op pickOp(Random random) {
+        int total = 0;
+        for (int weight : mix.values()) total += weight;
+        int pick = random.nextInt(total);
+        for (Map.Entry<Op, Integer> entry : mix.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) return entry.getKey();
+        }
+        return Op.LIST;
+    }
+
+    private Song randomSong(Random random) {
+        return catalog.get(random.nextInt(catalog.size()));
+    }
+
+    // On loopback the song files are visible, so their size is exact.
+    private static long expectedBytes(Song song) {
+        File file = song.getFilePath() == null ? null : new File(song.getFilePath());
+        if (file != null && file.exists()) return file.length();
+        return Math.max(1, song.getTrackLength()) * DEFAULT_BYTES_PER_SECOND;
+    }
+
+    private void record(Op op, long firstByteNanos, long bytes) {
+        OpStats opStats = stats.get(op);
+        opStats.completed.increment();
+        opStats.latencies.add(firstByteNanos / 1000);
+        if (bytes > 0) bytesReceived.add(bytes);
+    }
+
+    private void error(Op op, String reason) {
+        if (!running) return;
+        stats.get(op).errors.increment();
+        errors.computeIfAbsent(op.name() + " " + reason, key -> new LongAdder()).increment();
+    }
+
+    // Clears the counters in place; the client threads keep using the same objects.
+    private void resetCounters() {
+        bytesReceived.reset();
+        errors.clear();
+        for (OpStats opStats : stats.values()) {
+            opStats.reset();
+        }
+    }
+
+    private void printProgress(long start) {
+        long lastBytes = 0;
+        long lastOps = 0;
+        while (running) {
+            if (!sleepWhileRunning(PROGRESS_INTERVAL_MS)) break;
+            long bytes = bytesReceived.sum();
+            long ops = 0;
+            long failed = 0;
+            for (OpStats opStats : stats.values()) {
+                ops += opStats.completed.sum();
+                failed += opStats.errors.sum();
+            }
+            // Counters reset after the ramp, so deltas may go negative once.
+            long opsDelta = Math.max(0, ops - lastOps);
+            long bytesDelta = Math.max(0, bytes - lastBytes);
+            report.printf("[Load] t=%ds clients=%d ops/s=%.1f MB/s=%.1f errors=%d%n",
+                          (System.nanoTime() - start) / 1_000_000_000L, activeClients.get(),
+                          opsDelta * 1000.0 / PROGRESS_INTERVAL_MS,
+                          bytesDelta * 1000.0 / PROGRESS_INTERVAL_MS / (1024 * 1024), failed);
+            lastOps = ops;
+            lastBytes = bytes;
+        }
+    }
+
+    private void printReport(double seconds) {
+        long ops = 0;
+        long failed = 0;
+        report.println();
+        report.printf("[Load] Results for %d clients over %.1f s%n", clients, seconds);
+        report.printf("%-9s %9s %9s %9s %10s %10s %10s%n", "op", "completed", "partial", "errors",
+                      "p50 ms", "p99 ms", "p999 ms");
+        for (Op op : Op.values()) {
+            OpStats opStats = stats.get(op);
+            long[] sorted = opStats.latencies.sorted();
+            report.printf("%-9s %9d %9d %9d %10.2f %10.2f %10.2f%n", op.name(), opStats.completed.sum(),
+                          opStats.partial.sum(), opStats.errors.sum(), percentile(sorted, 0.50),
+                          percentile(sorted, 0.99), percentile(sorted, 0.999));
+            ops += opStats.completed.sum();
+            failed += opStats.errors.sum();
+        }
+        double megabytes = bytesReceived.sum() / (1024.0 * 1024.0);
+        report.printf("[Load] Throughput: %.1f requests/s, %.1f MB/s (%.1f MB received), %d errors%n",
+                      ops / seconds, megabytes / seconds, megabytes, failed);
+        List<Map.Entry<String, LongAdder>> byCount = new ArrayList<>(errors.entrySet());
+        byCount.sort((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()));
+        for (Map.Entry<String, LongAdder> entry : byCount) {
+            report.printf("[Load]   %6d x %s%n", entry.getValue().sum(), entry.getKey());
+        }
+    }
+
+    // Latency in milliseconds at the given quantile of sorted microsecond samples.
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000.0;
+    }
+
+    // Write corpusFiles WAV files of distinct tones, so fingerprints do not merge them.
+    // Files already there from an earlier run are reused.
+    private void generateCorpus() throws IOException {
+        if (!corpusDir.isDirectory() && !corpusDir.mkdirs()) {
+            throw new IOException("Cannot create corpus directory " + corpusDir);
+        }
+        int dataBytes = SAMPLE_RATE * 2 * corpusSeconds;
+        int created = 0;
+        for (int i = 0; i < corpusFiles; i++) {
+            File file = new File(corpusDir, String.format("synthetic_%04d.wav", i));
+            if (file.length() == 44 + dataBytes) continue;
+            double frequency = 110 + i * 7.3;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                writeWavHeader(out, dataBytes);
+                for (int n = 0; n < dataBytes / 2; n++) {
+                    double t = (double) n / SAMPLE_RATE;
+                    // A slow tremolo keeps the head, middle and tail samples distinct.
+                    double amplitude = 0.3 + 0.2 * Math.sin(2 * Math.PI * t / (i + 3));
+                    short sample = (short) (amplitude * Short.MAX_VALUE * Math.sin(2 * Math.PI * frequency * t));
+                    out.writeShort(Short.reverseBytes(sample));
+                }
+            }
+            created++;
+        }
+        report.println("[Load] Corpus: " + corpusFiles + " synthetic songs of " + corpusSeconds + " s in " +
+                       corpusDir.getAbsolutePath() + " (" + created + " generated)");
+    }
+
+    private static void writeWavHeader(DataOutputStream out, int dataBytes) throws IOException {
+        out.writeBytes("RIFF");
+        out.writeInt(Integer.reverseBytes(36 + dataBytes));
+        out.writeBytes("WAVE");
+        out.writeBytes("fmt ");
+        out.writeInt(Integer.reverseBytes(16));
+        out.writeShort(Short.reverseBytes((short) 1));   // PCM
+        out.writeShort(Short.reverseBytes((short) 1));   // mono
+        out.writeInt(Integer.reverseBytes(SAMPLE_RATE));
+        out.writeInt(Integer.reverseBytes(SAMPLE_RATE * 2));
+        out.writeShort(Short.reverseBytes((short) 2));   // block align
+        out.writeShort(Short.reverseBytes((short) 16));  // bits per sample
+        out.writeBytes("data");
+        out.writeInt(Integer.reverseBytes(dataBytes));
+    }
+
+    private void startEmbeddedServer() throws IOException {
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--headless", "--port", String.valueOf(port), "--root", corpusDir.getPath(),
+                // No remote tracks in a load test.
+                "--remote-list", new File(corpusDir, "no_remote_tracks.txt").getPath(),
+                "--cache-dir", new File(corpusDir, "remote_cache").getPath(),
+                "--fingerprint-cache", new File(corpusDir, "fingerprint_cache.json").getPath(),
+                "--index-file", new File(corpusDir, "indexed_music.json").getPath()));
+        args.addAll(serverArgs);
+        MusicServer server = new MusicServer(ServerConfig.fromArgs(args.toArray(new String[0])));
+        if (!verboseServer) {
+            // The server logs every request; at load-test rates that drowns the report.
+            PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+            System.setOut(discard);
+            System.setErr(discard);
+        }
+        Thread serverThread = new Thread(server::start, "embedded-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        report.println("[Load] Started in-process server on port " + port);
+    }
+
+    // Poll LIST until the server is up and has finished indexing.
+    private List<Song> waitForCatalog() throws IOException {
+        long deadline = System.currentTimeMillis() + 300_000;
+        IOException lastError = null;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket socket = connect();
+                 PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                writer.println("LIST");
+                List<Song> songs = gson.fromJson(reader.readLine(), new TypeToken<List<Song>>() {}.getType());
+                String statusLine = reader.readLine();
+                JsonObject status = statusLine == null ? null : gson.fromJson(statusLine, JsonObject.class);
+                boolean indexing = status != null && status.has("indexing") && status.get("indexing").getAsBoolean();
+                if (!indexing && songs != null) {
+                    return songs;
+                }
+            } catch (IOException e) {
+                lastError = e;
+            }
+            sleepWhileRunning(500);
+        }
+        throw new IOException("Server at " + host + ":" + port + " did not become ready" +
+                              (lastError == null ? "" : ": " + lastError.getMessage()));
+    }
+
+    private boolean sleepWhileRunning(long millis) {
+        try {
+            Thread.sleep(millis);
+            return running;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        long waitNanos = nanoTime - System.nanoTime();
+        if (waitNanos <= 0) return;
+        try {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Counters of one request type.
+    private static class OpStats {
+        final LongAdder completed = new LongAdder();
+        final LongAdder partial = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LatencySamples latencies = new LatencySamples();
+
+        void reset() {
+            completed.reset();
+            partial.reset();
+            errors.reset();
+            latencies.clear();
+        }
+    }
+
+    // Time-to-first-byte samples in microseconds.
+    private static class LatencySamples {
+        private long[] samples = new long[1024];
+        private int size;
+
+        synchronized void add(long micros) {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            samples[size++] = micros;
+        }
+
+        synchronized void clear() {
+            size = 0;
+        }
+
+        synchronized long[] sorted() {
+            long[] copy = Arrays.copyOf(samples, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+
+    // Counts the bytes of a LIST reply read through a BufferedReader.
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
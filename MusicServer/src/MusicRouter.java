@@ -0,0 +1,414 @@
+// MusicRouter.java
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Front-end for several MusicServer nodes. Each shard is a set of replica nodes
+// indexing the same roots. LIST and SEARCH are fanned out to one live replica of
+// every shard and merged by song ID; STREAM and DOWNLOAD are relayed from a shard
+// that owns the song, failing over to the next replica if a node cannot serve it.
+// CHANNELS is fanned out and the listener counts summed; TUNE is relayed from the
+// first node that broadcasts the channel.
+//
+//   java -cp MusicServer.jar MusicRouter --port 5555 \
+//        --shard 127.0.0.1:5601,127.0.0.1:5611 --shard 127.0.0.1:5602
+public class MusicRouter {
+
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final int READ_TIMEOUT_MS = 10000;
+    // A replica that failed is skipped for this long, unless no other replica is left.
+    private static final long RETRY_AFTER_MS = 10000;
+
+    private final int port;
+    private final List<List<Node>> shards;
+    // Song ID -> indexes of the shards that hold it.
+    private final Map<String, Set<Integer>> owners = new ConcurrentHashMap<>();
+    private final ExecutorService fanOutPool = Executors.newCachedThreadPool();
+    private final Gson gson = new Gson();
+
+    public MusicRouter(int port, List<List<Node>> shards) {
+        this.port = port;
+        this.shards = shards;
+    }
+
+    public static void main(String[] args) {
+        int port = 5555;
+        List<List<Node>> shards = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--port") && i + 1 < args.length) {
+                    port = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--shard") && i + 1 < args.length) {
+                    List<Node> replicas = new ArrayList<>();
+                    for (String address : args[++i].split(",")) {
+                        replicas.add(Node.parse(address.trim()));
+                    }
+                    shards.add(replicas);
+                } else {
+                    throw new IllegalArgumentException("Unknown or incomplete option: " + args[i]);
+                }
+            }
+            if (shards.isEmpty()) {
+                throw new IllegalArgumentException("At least one --shard host:port[,host:port...] is required");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("[Router] Invalid configuration: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        new MusicRouter(port, shards).start();
+    }
+
+    public void start() {
+        System.out.println("[Router] Routing " + shards.size() + " shards on port " + port);
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            while (true) {
+                Socket clientSocket = serverSocket.accept();
+                System.out.println("[Router] Client connected from: " + clientSocket.getInetAddress());
+                pool.execute(() -> handleClient(clientSocket));
+            }
+        } catch (IOException e) {
+            System.err.println("[Router] Error in server socket:");
+            e.printStackTrace();
+        }
+    }
+
+    private void handleClient(Socket clientSocket) {
+        try (Socket socket = clientSocket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             BufferedOutputStream out = new BufferedOutputStream(socket.getOutputStream());
+             PrintWriter writer = new PrintWriter(out, true)) {
+            String request = in.readLine();
+            if (request == null) return;
+            System.out.println("[Router] Received request: " + request);
+            String upper = request.toUpperCase();
+            if (upper.equals("LIST")) {
+                sendList(writer);
+            } else if (upper.startsWith("SEARCH")) {
+                List<ShardReply> replies = fanOut(request);
+                writer.println(gson.toJson(merge(replies, false)));
+            } else if (upper.startsWith("STREAM") || upper.startsWith("DOWNLOAD")) {
+                String[] tokens = request.split(" ");
+                if (tokens.length >= 2) {
+                    relay(tokens[1], request, out);
+                }
+            } else if (upper.startsWith("TUNE")) {
+                String[] tokens = request.split(" ");
+                if (tokens.length >= 2) {
+                    List<Integer> all = new ArrayList<>();
+                    for (int shard = 0; shard < shards.size(); shard++) all.add(shard);
+                    if (!relayFrom(all, request, "channel " + tokens[1], out)) {
+                        System.out.println("[Router] No node broadcasts channel " + tokens[1]);
+                    }
+                }
+            } else if (upper.equals("CHANNELS")) {
+                writer.println(gson.toJson(mergeChannels(fanOut("CHANNELS"))));
+            } else if (upper.equals("STATS")) {
+                writer.println(gson.toJson(nodeStatus()));
+            }
+        } catch (IOException e) {
+            System.err.println("[Router] Error handling client: " + e.getMessage());
+        }
+    }
+
+    // Merged catalog on the first line, combined indexing progress on the second.
+    private void sendList(PrintWriter writer) {
+        List<ShardReply> replies = fanOut("LIST");
+        Collection<Song> songs = merge(replies, true);
+        writer.println(gson.toJson(songs));
+        boolean indexing = false;
+        int processed = 0, discovered = 0, shardsUp = 0;
+        for (ShardReply reply : replies) {
+            if (reply == null) continue;
+            shardsUp++;
+            if (reply.status != null) {
+                indexing |= reply.status.has("indexing") && reply.status.get("indexing").getAsBoolean();
+                processed += reply.status.has("processed") ? reply.status.get("processed").getAsInt() : 0;
+                discovered += reply.status.has("discovered") ? reply.status.get("discovered").getAsInt() : 0;
+            }
+        }
+        // A shard without any live replica means the catalog is incomplete.
+        indexing |= shardsUp < shards.size();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("indexing", indexing);
+        status.put("processed", processed);
+        status.put("discovered", discovered);
+        status.put("songs", songs.size());
+        status.put("shards", shards.size());
+        status.put("shardsUp", shardsUp);
+        writer.println(gson.toJson(status));
+    }
+
+    // Send the request to every shard in parallel. Missing shards yield null.
+    private List<ShardReply> fanOut(String request) {
+        List<Future<ShardReply>> pending = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            int shard = i;
+            pending.add(fanOutPool.submit(() -> query(shard, request)));
+        }
+        List<ShardReply> replies = new ArrayList<>();
+        for (Future<ShardReply> future : pending) {
+            try {
+                replies.add(future.get());
+            } catch (ExecutionException e) {
+                replies.add(null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                replies.add(null);
+            }
+        }
+        return replies;
+    }
+
+    // Ask the replicas of one shard in turn until one answers.
+    private ShardReply query(int shard, String request) {
+        for (Node node : candidates(shard)) {
+            try (Socket socket = node.connect();
+                 PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+                writer.println(request);
+                String json = reader.readLine();
+                if (json == null) throw new IOException("empty reply");
+                if (request.equalsIgnoreCase("CHANNELS")) {
+                    java.lang.reflect.Type mapType = new TypeToken<Map<String, Integer>>() {}.getType();
+                    Map<String, Integer> channels = gson.fromJson(json, mapType);
+                    node.markUp();
+                    return new ShardReply(shard, channels);
+                }
+                java.lang.reflect.Type listType = new TypeToken<List<Song>>() {}.getType();
+                List<Song> songs = gson.fromJson(json, listType);
+                String statusLine = reader.readLine();
+                JsonObject status = statusLine == null ? null : gson.fromJson(statusLine, JsonObject.class);
+                node.markUp();
+                return new ShardReply(shard, songs, status);
+            } catch (Exception e) {
+                node.markDown(e);
+            }
+        }
+        System.err.println("[Router] No live replica for shard " + shard);
+        return null;
+    }
+
+    // Merge shard results by song ID. The first shard listing a song provides its metadata.
+    private Collection<Song> merge(List<ShardReply> replies, boolean updateOwners) {
+        Map<String, Song> merged = new LinkedHashMap<>();
+        for (ShardReply reply : replies) {
+            if (reply == null || reply.songs == null) continue;
+            Set<String> held = new HashSet<>();
+            for (Song song : reply.songs) {
+                merged.putIfAbsent(song.getId(), song);
+                held.add(song.getId());
+                if (updateOwners) {
+                    owners.computeIfAbsent(song.getId(), id -> ConcurrentHashMap.newKeySet()).add(reply.shard);
+                }
+            }
+            if (updateOwners) {
+                // Forget songs this shard no longer lists.
+                for (Map.Entry<String, Set<Integer>> entry : owners.entrySet()) {
+                    if (!held.contains(entry.getKey())) entry.getValue().remove(reply.shard);
+                }
+            }
+        }
+        return merged.values();
+    }
+
+    // Every node runs its own broadcasts, so a channel name seen on several shards
+    // is reported once with the listeners of all of them.
+    private Map<String, Integer> mergeChannels(List<ShardReply> replies) {
+        Map<String, Integer> merged = new TreeMap<>();
+        for (ShardReply reply : replies) {
+            if (reply == null || reply.channels == null) continue;
+            for (Map.Entry<String, Integer> entry : reply.channels.entrySet()) {
+                merged.merge(entry.getKey(), entry.getValue(), Integer::sum);
+            }
+        }
+        return merged;
+    }
+
+    // Relay a STREAM/DOWNLOAD from a replica of a shard that owns the song.
+    private void relay(String songId, String request, OutputStream out) throws IOException {
+        Set<Integer> owning = owners.get(songId);
+        if (owning == null || owning.isEmpty()) {
+            // Unknown to the router yet, e.g. a client that cached the ID; refresh ownership.
+            merge(fanOut("LIST"), true);
+            owning = owners.get(songId);
+        }
+        if (owning == null || owning.isEmpty()) {
+            System.out.println("[Router] No shard holds song id " + songId);
+            return;
+        }
+        if (!relayFrom(owning, request, "song id " + songId, out)) {
+            System.err.println("[Router] No replica could serve song id " + songId);
+        }
+    }
+
+    // Forward the request to the nodes of the given shards in turn and copy the reply to
+    // the client from the first one that sends any bytes. Returns false if none did.
+    private boolean relayFrom(Collection<Integer> shardIndexes, String request, String what,
+                              OutputStream out) throws IOException {
+        for (int shard : shardIndexes) {
+            for (Node node : candidates(shard)) {
+                Socket socket;
+                InputStream nodeIn;
+                byte[] buffer = new byte[8192];
+                int count;
+                try {
+                    socket = node.connect();
+                } catch (IOException e) {
+                    node.markDown(e);
+                    continue;
+                }
+                try (Socket nodeSocket = socket) {
+                    try {
+                        new PrintWriter(nodeSocket.getOutputStream(), true).println(request);
+                        nodeIn = nodeSocket.getInputStream();
+                        count = nodeIn.read(buffer);
+                        node.markUp();
+                    } catch (IOException e) {
+                        node.markDown(e);
+                        continue;
+                    }
+                    if (count <= 0) {
+                        // Node is healthy but has nothing to send; try another copy.
+                        System.out.println("[Router] " + node + " returned no data for " + what);
+                        continue;
+                    }
+                    System.out.println("[Router] Relaying " + what + " from " + node);
+                    // A node shaping transfers may hold a download back behind streams for
+                    // longer than READ_TIMEOUT_MS, so the timeout only guards the first byte.
+                    nodeSocket.setSoTimeout(0);
+                    // Once bytes have reached the client the transfer cannot move to another
+                    // replica, so errors from here on end the relay. Only errors reading from
+                    // the node count against it; a client hanging up is not the node's fault.
+                    do {
+                        try {
+                            out.write(buffer, 0, count);
+                        } catch (IOException e) {
+                            System.out.println("[Router] Client stopped receiving " + what + ": " + e.getMessage());
+                            return true;
+                        }
+                        try {
+                            count = nodeIn.read(buffer);
+                        } catch (IOException e) {
+                            node.markDown(e);
+                            System.err.println("[Router] " + node + " failed while relaying " + what);
+                            return true;
+                        }
+                    } while (count > 0);
+                    out.flush();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Replicas of a shard, live ones first.
+    private List<Node> candidates(int shard) {
+        List<Node> live = new ArrayList<>();
+        List<Node> down = new ArrayList<>();
+        for (Node node : shards.get(shard)) {
+            (node.isDown() ? down : live).add(node);
+        }
+        live.addAll(down);
+        return live;
+    }
+
+    private List<Map<String, Object>> nodeStatus() {
+        List<Map<String, Object>> status = new ArrayList<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (Node node : shards.get(shard)) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("shard", shard);
+                entry.put("node", node.toString());
+                entry.put("up", !node.isDown());
+                if (node.lastError != null) entry.put("lastError", node.lastError);
+                status.add(entry);
+            }
+        }
+        return status;
+    }
+
+    // LIST/SEARCH or CHANNELS result of one shard.
+    private static class ShardReply {
+        final int shard;
+        final List<Song> songs;
+        final JsonObject status;
+        final Map<String, Integer> channels;
+
+        ShardReply(int shard, List<Song> songs, JsonObject status) {
+            this.shard = shard;
+            this.songs = songs;
+            this.status = status;
+            this.channels = null;
+        }
+
+        ShardReply(int shard, Map<String, Integer> channels) {
+            this.shard = shard;
+            this.songs = null;
+            this.status = null;
+            this.channels = channels;
+        }
+    }
+
+    // One MusicServer instance and its health.
+    static class Node {
+        private final InetSocketAddress address;
+        private volatile long downUntil;
+        private volatile String lastError;
+
+        Node(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        static Node parse(String hostPort) {
+            int colon = hostPort.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Expected host:port but got: " + hostPort);
+            }
+            int port = Integer.parseInt(hostPort.substring(colon + 1));
+            return new Node(InetSocketAddress.createUnresolved(hostPort.substring(0, colon), port));
+        }
+
+        Socket connect() throws IOException {
+            Socket socket = new Socket();
+            socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            return socket;
+        }
+
+        boolean isDown() {
+            return System.currentTimeMillis() < downUntil;
+        }
+
+        void markUp() {
+            downUntil = 0;
+        }
+
+        void markDown(Exception e) {
+            if (!isDown()) {
+                System.err.println("[Router] Node " + this + " failed: " + e.getMessage());
+            }
+            lastError = e.getMessage();
+            downUntil = System.currentTimeMillis() + RETRY_AFTER_MS;
+        }
+
+        @Override
+        public String toString() {
+            return address.getHostString() + ":" + address.getPort();
+        }
+    }
+}
@@ -12,58 +12,121 @@ import javax.swing.*;
 import javax.swing.filechooser.FileSystemView;
 import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.*;
-import java.net.HttpURLConnection;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URL;
 import java.util.*;
 import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MusicServer {
 
-    // Map of song ID -> Song objects.
-    private final Map<Integer, Song> songDatabase = new HashMap<>();
-    private int songIdCounter = 0;
+    // Map of content-fingerprint song ID -> Song objects.
+    private final Map<String, Song> songDatabase = new ConcurrentHashMap<>();
+    private final SongFingerprinter fingerprinter;
+    // Fingerprinting and metadata extraction run in parallel on this pool.
+    private final ExecutorService indexPool =
+            Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private final IndexProgress progress = new IndexProgress();
     // Toggle album image extraction (set false in this version)
     private final boolean includeAlbumImage = false;
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
-    private final int PORT = 5555;  // change as needed
+    // Bytes fetched from the head of each remote track to read its tags.
+    private final int REMOTE_PROBE_BYTES = 128 * 1024;
+    private final ServerConfig config;
+    private final RemoteTrackCache remoteCache;
+    private final TransferScheduler scheduler;
+    // Broadcast channels by name, for TUNE.
+    private final Map<String, BroadcastChannel> channels = new ConcurrentHashMap<>();
+
+    public MusicServer(ServerConfig config) {
+        this.config = config;
+        this.fingerprinter = new SongFingerprinter(config.getFingerprintCache());
+        this.remoteCache = new RemoteTrackCache(config.getRemoteCacheDir(), config.getRemoteCacheBytes());
+        this.scheduler = new TransferScheduler(config.getTotalLimitBytes(), config.getStreamLimitBytes(),
+                                               config.getDownloadLimitBytes());
+        createChannels();
+    }
+
+    // The "all" channel plays every MP3 in the catalog; further channels list song IDs
+    // in the configuration. Playlists are resolved on each pass, so they pick up songs
+    // indexed after startup.
+    private void createChannels() {
+        BroadcastChannel.SongSource source = song -> ClientHandler.openSong(song, remoteCache);
+        channels.put("all", new BroadcastChannel("all", () -> {
+            List<Song> songs = new ArrayList<>();
+            for (Song song : songDatabase.values()) {
+                if (song.getFileName().toLowerCase().endsWith(".mp3")) songs.add(song);
+            }
+            songs.sort(Comparator.comparing(Song::getId));
+            return songs;
+        }, source));
+        for (Map.Entry<String, List<String>> entry : config.getChannels().entrySet()) {
+            List<String> songIds = entry.getValue();
+            channels.put(entry.getKey(), new BroadcastChannel(entry.getKey(), () -> {
+                List<Song> songs = new ArrayList<>();
+                for (String songId : songIds) {
+                    Song song = songDatabase.get(songId);
+                    if (song != null) songs.add(song);
+                }
+                return songs;
+            }, source));
+        }
+        System.out.println("[Server] Broadcast channels: " + new TreeSet<>(channels.keySet()));
+    }
 
     public static void main(String[] args) {
         System.out.println("[Server] MusicServer starting up...");
-        MusicServer server = new MusicServer();
+        ServerConfig config;
+        try {
+            config = ServerConfig.fromArgs(args);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("[Server] Invalid configuration: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        MusicServer server = new MusicServer(config);
         server.start();
     }
 
     public void start() {
-        System.out.println("[Server] Launching directory chooser...");
-        List<File> chosenDirs = chooseMusicDirectories();
-        if (!chosenDirs.isEmpty()) {
-            System.out.println("[Server] Indexing selected folders...");
-            indexDirectories(chosenDirs);
-        } else {
-            System.out.println("[Server] No folders selected.");
-            JOptionPane.showMessageDialog(null, "No local folders selected.");
+        List<File> roots = new ArrayList<>(config.getRoots());
+        if (roots.isEmpty() && !config.isHeadless()) {
+            System.out.println("[Server] Launching directory chooser...");
+            roots = chooseMusicDirectories();
+            if (roots.isEmpty()) {
+                System.out.println("[Server] No folders selected.");
+                JOptionPane.showMessageDialog(null, "No local folders selected.");
+            }
+        } else if (roots.isEmpty()) {
+            System.out.println("[Server] No library roots configured.");
         }
-        
-        System.out.println("[Server] Checking for OneDrive URLs...");
-        indexOneDriveFiles();
 
-        System.out.println("[Server] Saving indexed database to JSON...");
-        saveDatabaseToJson();
+        // Serve the partial catalog while indexing continues in the background.
+        List<File> libraryRoots = roots;
+        Thread indexer = new Thread(() -> indexLibrary(libraryRoots), "indexer");
+        indexer.setDaemon(true);
 
-        System.out.println("[Server] Starting server socket on port " + PORT);
+        int port = config.getPort();
+        System.out.println("[Server] Starting server socket on port " + port);
         ExecutorService pool = Executors.newCachedThreadPool();
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            indexer.start();
             while (true) {
                 System.out.println("[Server] Waiting for client connection...");
                 Socket clientSocket = serverSocket.accept();
                 System.out.println("[Server] Client connected from: " + clientSocket.getInetAddress());
-                pool.execute(new ClientHandler(clientSocket, songDatabase));
+                pool.execute(new ClientHandler(clientSocket, songDatabase, remoteCache, progress, scheduler, channels));
             }
         } catch (IOException e) {
             System.err.println("[Server] Error in server socket:");
@@ -71,6 +134,22 @@ public class MusicServer {
         }
     }
 
+    private void indexLibrary(List<File> roots) {
+        if (!roots.isEmpty()) {
+            System.out.println("[Server] Indexing selected folders...");
+            indexDirectories(roots);
+        }
+
+        System.out.println("[Server] Checking for OneDrive URLs...");
+        indexOneDriveFiles();
+        fingerprinter.saveCache();
+
+        System.out.println("[Server] Saving indexed database to JSON...");
+        saveDatabaseToJson();
+        progress.finish();
+        System.out.println("[Server] Indexing complete: " + songDatabase.size() + " songs.");
+    }
+
     // Let the user choose directories via a Swing file chooser.
     private List<File> chooseMusicDirectories() {
         List<File> directories = new ArrayList<>();
@@ -95,24 +174,54 @@ public class MusicServer {
             }
             frame.dispose();
         });
+        CountDownLatch closed = new CountDownLatch(1);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                closed.countDown();
+            }
+        });
         frame.setVisible(true);
-        while (frame.isDisplayable()) {
-            try {
-                Thread.sleep(200);
-            } catch (InterruptedException ignore) {}
+        try {
+            closed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
         return directories;
     }
 
-    // Recursively index files in each chosen directory.
+    // Recursively index files in each chosen directory, fingerprinting files in parallel.
     private void indexDirectories(List<File> directories) {
+        List<File> audioFiles = new ArrayList<>();
         for (File dir : directories) {
-            System.out.println("[Server] Indexing folder: " + dir.getAbsolutePath());
-            indexFolder(dir);
+            System.out.println("[Server] Scanning folder: " + dir.getAbsolutePath());
+            collectAudioFiles(dir, audioFiles);
+        }
+        progress.discovered(audioFiles.size());
+        List<Future<?>> pending = new ArrayList<>();
+        for (File file : audioFiles) {
+            pending.add(indexPool.submit(() -> {
+                try {
+                    indexFile(file);
+                } finally {
+                    progress.processed();
+                }
+            }));
+        }
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                System.err.println("[Server] Indexing task failed:");
+                e.getCause().printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
     }
 
-    private void indexFolder(File folder) {
+    private void collectAudioFiles(File folder, List<File> audioFiles) {
         File[] files = folder.listFiles();
         if (files == null) {
             System.out.println("[Server] Folder " + folder.getAbsolutePath() + " is empty or inaccessible.");
@@ -120,214 +229,320 @@ public class MusicServer {
         }
         for (File file : files) {
             if (file.isDirectory()) {
-                indexFolder(file);
-            } else {
-                String fileNameLower = file.getName().toLowerCase();
-                if (fileNameLower.endsWith(".mp3")   || fileNameLower.endsWith(".wav")  ||
-                    fileNameLower.endsWith(".flac")  || fileNameLower.endsWith(".aiff") ||
-                    fileNameLower.endsWith(".aac")   || fileNameLower.endsWith(".wma")  ||
-                    fileNameLower.endsWith(".ogg")) {
-                    
-                    String title = file.getName();
-                    String album = "Unknown";
-                    String genre = "Unknown";
-                    String artist = "Unknown";
-                    String albumArtist = "Unknown";
-                    String year = "Unknown";
-                    String producers = "Unknown";   // Set default as producer not available
-                    String publisher = "Unknown";   // Set default as publisher not available
-                    int trackLength = 0;
-                    String extractedFileName = file.getName();
-                    String albumImageBase64 = "";
-                    
-                    try {
-                        System.out.println("[Server] Reading metadata for: " + file.getAbsolutePath());
-                        AudioFile audioFile = AudioFileIO.read(file);
-                        AudioHeader header = audioFile.getAudioHeader();
-                        if (header != null) {
-                            trackLength = header.getTrackLength();
-                        }
-                        Tag tag = audioFile.getTag();
-                        if (tag != null) {
-                            String t = tag.getFirst(FieldKey.TITLE);
-                            String a = tag.getFirst(FieldKey.ALBUM);
-                            String g = tag.getFirst(FieldKey.GENRE);
-                            String art = tag.getFirst(FieldKey.ARTIST);
-                            String alArt = tag.getFirst(FieldKey.ALBUM_ARTIST);
-                            String yr = tag.getFirst(FieldKey.YEAR);
-                            // PRODUCER and PUBLISHER are not available; use defaults.
-                            
-                            if (t != null && !t.isEmpty()) title = t;
-                            if (a != null && !a.isEmpty()) album = a;
-                            if (g != null && !g.isEmpty()) genre = g;
-                            if (art != null && !art.isEmpty()) artist = art;
-                            if (alArt != null && !alArt.isEmpty()) albumArtist = alArt;
-                            if (yr != null && !yr.isEmpty()) year = yr;
-                            
-                            // Optionally extract album image. (Not available in this version.)
-                            if (includeAlbumImage) {
-                                // Feature removed: artwork extraction is not supported here.
-                                albumImageBase64 = "";
-                            }
-                        }
-                    } catch (Exception e) {
-                        System.err.println("[Server] Metadata extraction failed for: " + file.getAbsolutePath());
-                    }
-                    
-                    Song song = new Song(++songIdCounter, title, album, genre, file.getAbsolutePath(),
-                                             artist, albumArtist, year, trackLength, producers, publisher,
-                                             extractedFileName, albumImageBase64);
-                    songDatabase.put(song.getId(), song);
-                    System.out.println("[Server] Indexed (" + song.getId() + "): " + file.getAbsolutePath());
-                    System.out.println("    Title: " + title);
-                    System.out.println("    Artist: " + artist);
-                    System.out.println("    Album: " + album);
-                    System.out.println("    Album Artist: " + albumArtist);
-                    System.out.println("    Genre: " + genre);
-                    System.out.println("    Year: " + year);
-                    System.out.println("    Track Length: " + trackLength + " seconds");
-                    System.out.println("    Producers: " + producers);
-                    System.out.println("    Publisher: " + publisher);
-                    System.out.println("    File Name: " + extractedFileName);
-                    if (includeAlbumImage) {
-                        System.out.println("    Album Image Base64: " + (albumImageBase64.isEmpty() ? "none" : "present"));
-                    }
+                collectAudioFiles(file, audioFiles);
+            } else if (isSupportedAudio(file.getName())) {
+                audioFiles.add(file);
+            }
+        }
+    }
+
+    private static boolean isSupportedAudio(String fileName) {
+        String fileNameLower = fileName.toLowerCase();
+        return fileNameLower.endsWith(".mp3")   || fileNameLower.endsWith(".wav")  ||
+               fileNameLower.endsWith(".flac")  || fileNameLower.endsWith(".aiff") ||
+               fileNameLower.endsWith(".aac")   || fileNameLower.endsWith(".wma")  ||
+               fileNameLower.endsWith(".ogg");
+    }
+
+    private void indexFile(File file) {
+        String path = file.getAbsolutePath();
+        String songId;
+        try {
+            songId = fingerprinter.fingerprint(file);
+        } catch (IOException e) {
+            System.err.println("[Server] Fingerprinting failed for: " + path);
+            return;
+        }
+        Song known = songDatabase.get(songId);
+        if (known != null && known.getFilePath().compareTo(path) <= 0) {
+            if (!known.getFilePath().equals(path)) {
+                System.out.println("[Server] Duplicate of " + known.getFilePath() + " skipped: " + path);
+            }
+            return;
+        }
+
+        Song song = readSong(songId, file, path, file.getName(), -1);
+        // Identical audio in several folders collapses into one entry; the
+        // lexicographically smallest path wins so the choice is deterministic.
+        Song kept = songDatabase.merge(songId, song, (a, b) -> {
+            if (a.getFilePath().compareTo(b.getFilePath()) <= 0) return a;
+            System.out.println("[Server] " + b.getFilePath() + " replaces duplicate " + a.getFilePath());
+            return b;
+        });
+        if (kept != song) {
+            System.out.println("[Server] Duplicate of " + kept.getFilePath() + " skipped: " + path);
+            return;
+        }
+        logIndexed(song);
+    }
+
+    // Print the indexed song in one piece so parallel indexers do not interleave lines.
+    private void logIndexed(Song song) {
+        StringBuilder report = new StringBuilder();
+        report.append("[Server] Indexed (").append(song.getId()).append("): ")
+              .append(song.isRemote() ? song.getRemoteUrl() : song.getFilePath()).append('\n');
+        report.append("    Title: ").append(song.getTitle()).append('\n');
+        report.append("    Artist: ").append(song.getArtist()).append('\n');
+        report.append("    Album: ").append(song.getAlbum()).append('\n');
+        report.append("    Album Artist: ").append(song.getAlbumArtist()).append('\n');
+        report.append("    Genre: ").append(song.getGenre()).append('\n');
+        report.append("    Year: ").append(song.getYear()).append('\n');
+        report.append("    Track Length: ").append(song.getTrackLength()).append(" seconds").append('\n');
+        report.append("    Producers: ").append(song.getProducers()).append('\n');
+        report.append("    Publisher: ").append(song.getPublisher()).append('\n');
+        report.append("    File Name: ").append(song.getFileName());
+        if (includeAlbumImage) {
+            report.append('\n').append("    Album Image Base64: ").append(song.getAlbumImageBase64().isEmpty() ? "none" : "present");
+        }
+        System.out.println(report);
+    }
+
+    // Read tags from metadataFile into a new Song; fileName is the title when the
+    // tags have none. When remoteLength is not -1 the file only holds the head of a
+    // remote track, so the track length is estimated from the bit rate and the
+    // remote length.
+    private Song readSong(String songId, File metadataFile, String filePath, String fileName, long remoteLength) {
+        String title = fileName;
+        String album = "Unknown";
+        String genre = "Unknown";
+        String artist = "Unknown";
+        String albumArtist = "Unknown";
+        String year = "Unknown";
+        String producers = "Unknown";   // Set default as producer not available
+        String publisher = "Unknown";   // Set default as publisher not available
+        int trackLength = 0;
+        String extractedFileName = fileName;
+        String albumImageBase64 = "";
+
+        try {
+            System.out.println("[Server] Reading metadata for: " + metadataFile.getAbsolutePath());
+            AudioFile audioFile = AudioFileIO.read(metadataFile);
+            AudioHeader header = audioFile.getAudioHeader();
+            if (header != null) {
+                trackLength = header.getTrackLength();
+                long kbps = header.getBitRateAsNumber();
+                if (remoteLength > 0 && kbps > 0) {
+                    trackLength = (int) (remoteLength * 8 / (kbps * 1000));
                 }
             }
+            Tag tag = audioFile.getTag();
+            if (tag != null) {
+                String t = tag.getFirst(FieldKey.TITLE);
+                String a = tag.getFirst(FieldKey.ALBUM);
+                String g = tag.getFirst(FieldKey.GENRE);
+                String art = tag.getFirst(FieldKey.ARTIST);
+                String alArt = tag.getFirst(FieldKey.ALBUM_ARTIST);
+                String yr = tag.getFirst(FieldKey.YEAR);
+                // PRODUCER and PUBLISHER are not available; use defaults.
+
+                if (t != null && !t.isEmpty()) title = t;
+                if (a != null && !a.isEmpty()) album = a;
+                if (g != null && !g.isEmpty()) genre = g;
+                if (art != null && !art.isEmpty()) artist = art;
+                if (alArt != null && !alArt.isEmpty()) albumArtist = alArt;
+                if (yr != null && !yr.isEmpty()) year = yr;
+
+                // Optionally extract album image. (Not available in this version.)
+                if (includeAlbumImage) {
+                    // Feature removed: artwork extraction is not supported here.
+                    albumImageBase64 = "";
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("[Server] Metadata extraction failed for: " + metadataFile.getAbsolutePath());
         }
+
+        return new Song(songId, title, album, genre, filePath,
+                        artist, albumArtist, year, trackLength, producers, publisher,
+                        extractedFileName, albumImageBase64);
     }
 
-    // Reads OneDrive URLs from onedrive_list.txt and downloads them.
+    // Reads OneDrive URLs from onedrive_list.txt and registers each one in the
+    // catalog from a partial probe. The audio itself is only fetched, through the
+    // remote track cache, when a client first streams or downloads it.
     private void indexOneDriveFiles() {
-        File oneDriveList = new File("onedrive_list.txt");
+        File oneDriveList = config.getRemoteList();
         if (!oneDriveList.exists()) {
-            System.out.println("[Server] onedrive_list.txt not found; skipping OneDrive integration.");
+            System.out.println("[Server] " + oneDriveList.getName() + " not found; skipping OneDrive integration.");
             return;
         }
-        File downloadDir = new File("downloaded_onedrive");
-        if (!downloadDir.exists()) {
-            downloadDir.mkdirs();
-        }
-        System.out.println("[Server] Found onedrive_list.txt. Processing remote URLs...");
+        System.out.println("[Server] Found " + oneDriveList.getName() + ". Processing remote URLs...");
+        List<String> urls = new ArrayList<>();
         try (BufferedReader reader = new BufferedReader(new FileReader(oneDriveList))) {
             String urlStr;
             while ((urlStr = reader.readLine()) != null) {
                 urlStr = urlStr.trim();
                 if (urlStr.isEmpty()) continue;
                 try {
-                    URL url = new URL(urlStr);
-                    String path = url.getPath();
-                    String fileName = path.substring(path.lastIndexOf('/') + 1).toLowerCase();
-                    if (!(fileName.endsWith(".mp3")   || fileName.endsWith(".wav")  ||
-                          fileName.endsWith(".flac")  || fileName.endsWith(".aiff") ||
-                          fileName.endsWith(".aac")   || fileName.endsWith(".wma")  ||
-                          fileName.endsWith(".ogg"))) {
+                    String path = new URL(urlStr).getPath();
+                    String fileName = path.substring(path.lastIndexOf('/') + 1);
+                    if (!isSupportedAudio(fileName)) {
                         System.out.println("[Server] Skipping unsupported remote file: " + fileName);
                         continue;
                     }
-                    File localFile = new File(downloadDir, fileName);
-                    System.out.println("[Server] Downloading remote file: " + urlStr);
-                    downloadFile(urlStr, localFile);
-                    // Index the downloaded file.
-                    indexFolder(localFile.getParentFile());
-                } catch (Exception ex) {
-                    System.err.println("[Server] Error processing remote URL: " + urlStr);
-                    ex.printStackTrace();
+                    urls.add(urlStr);
+                } catch (IOException ex) {
+                    System.err.println("[Server] Invalid remote URL: " + urlStr);
                 }
             }
         } catch (IOException e) {
-            System.err.println("[Server] Error reading onedrive_list.txt");
+            System.err.println("[Server] Error reading " + oneDriveList.getName());
             e.printStackTrace();
+            return;
+        }
+        progress.discovered(urls.size());
+        List<Future<?>> pending = new ArrayList<>();
+        for (String urlStr : urls) {
+            pending.add(indexPool.submit(() -> {
+                try {
+                    registerRemoteTrack(urlStr);
+                } finally {
+                    progress.processed();
+                }
+            }));
+        }
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                System.err.println("[Server] Remote probe task failed:");
+                e.getCause().printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
     }
 
-    // Downloads a file from the given URL to a local destination.
-    private void downloadFile(String urlStr, File destination) throws IOException {
-        URL url = new URL(urlStr);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setConnectTimeout(10000);
-        connection.setReadTimeout(10000);
-        try (InputStream in = connection.getInputStream();
-             FileOutputStream out = new FileOutputStream(destination)) {
-            byte[] buffer = new byte[4096];
-            int count;
-            while ((count = in.read(buffer)) > 0) {
-                out.write(buffer, 0, count);
+    private void registerRemoteTrack(String urlStr) {
+        File probeFile = null;
+        try {
+            RemoteDownloader.RemoteProbe probe = remoteCache.probe(urlStr, REMOTE_PROBE_BYTES);
+            File cacheFile = remoteCache.localFileFor(urlStr);
+            String fileName = RemoteDownloader.fileNameOf(urlStr);
+            // jaudiotagger picks its reader from the extension, so keep it on the probe file.
+            String cacheName = cacheFile.getName();
+            probeFile = File.createTempFile("probe", cacheName.contains(".") ? cacheName.substring(cacheName.lastIndexOf('.')) : null);
+            try (OutputStream out = new FileOutputStream(probeFile)) {
+                out.write(probe.head);
+            }
+            Song song = readSong(fingerprinter.fingerprintRemote(urlStr), probeFile,
+                                 cacheFile.getAbsolutePath(), fileName, probe.totalLength);
+            song.setRemoteUrl(urlStr);
+            songDatabase.put(song.getId(), song);
+            logIndexed(song);
+        } catch (Exception ex) {
+            System.err.println("[Server] Error processing remote URL: " + urlStr);
+            ex.printStackTrace();
+        } finally {
+            if (probeFile != null) {
+                probeFile.delete();
             }
         }
-        System.out.println("[Server] Downloaded remote file to: " + destination.getAbsolutePath());
     }
 
-    // Save the current song database to indexed_music.json.
+    // Save the current song database to the configured index file.
     private void saveDatabaseToJson() {
-        try (Writer writer = new FileWriter("indexed_music.json")) {
+        File indexFile = config.getIndexFile();
+        try (Writer writer = new FileWriter(indexFile)) {
             gson.toJson(songDatabase.values(), writer);
-            System.out.println("[Server] Indexed music database saved to indexed_music.json");
+            System.out.println("[Server] Indexed music database saved to " + indexFile);
         } catch (IOException e) {
-            System.err.println("[Server] Error saving indexed_music.json:");
+            System.err.println("[Server] Error saving " + indexFile + ":");
             e.printStackTrace();
         }
     }
 }
 
-// Data class representing a song and its metadata.
-class Song implements Serializable {
-    private int id;
-    private String title;
-    private String album;
-    private String genre;
-    private String filePath;
-    // Extra metadata fields.
-    private String artist;
-    private String albumArtist;
-    private String year;
-    private int trackLength;   // in seconds
-    private String producers;
-    private String publisher;
-    private String fileName;
-    private String albumImageBase64;
-
-    public Song(int id, String title, String album, String genre, String filePath,
-                String artist, String albumArtist, String year, int trackLength,
-                String producers, String publisher, String fileName, String albumImageBase64) {
-        this.id = id;
-        this.title = title;
-        this.album = album;
-        this.genre = genre;
-        this.filePath = filePath;
-        this.artist = artist;
-        this.albumArtist = albumArtist;
-        this.year = year;
-        this.trackLength = trackLength;
-        this.producers = producers;
-        this.publisher = publisher;
-        this.fileName = fileName;
-        this.albumImageBase64 = albumImageBase64;
+// Progress of the background indexer, reported to clients after each LIST.
+class IndexProgress {
+    private final AtomicInteger discovered = new AtomicInteger();
+    private final AtomicInteger processed = new AtomicInteger();
+    private volatile boolean indexing = true;
+
+    public void discovered(int count) { discovered.addAndGet(count); }
+    public void processed() { processed.incrementAndGet(); }
+    public void finish() { indexing = false; }
+
+    public String toJson(int songCount) {
+        return new Gson().toJson(new Status(indexing, processed.get(), discovered.get(), songCount));
+    }
+
+    // The status line sent after the LIST reply.
+    private static class Status {
+        private final boolean indexing;
+        private final int processed;
+        private final int discovered;
+        private final int songs;
+
+        Status(boolean indexing, int processed, int discovered, int songs) {
+            this.indexing = indexing;
+            this.processed = processed;
+            this.discovered = discovered;
+            this.songs = songs;
+        }
     }
-    public int getId() { return id; }
-    public String getTitle() { return title; }
-    public String getAlbum() { return album; }
-    public String getGenre() { return genre; }
-    public String getFilePath() { return filePath; }
-    public String getArtist() { return artist; }
-    public String getAlbumArtist() { return albumArtist; }
-    public String getYear() { return year; }
-    public int getTrackLength() { return trackLength; }
-    public String getProducers() { return producers; }
-    public String getPublisher() { return publisher; }
-    public String getFileName() { return fileName; }
-    public String getAlbumImageBase64() { return albumImageBase64; }
 }
 
 // Handles client requests.
 class ClientHandler implements Runnable {
 
     private final Socket clientSocket;
-    private final Map<Integer, Song> songDatabase;
+    private final Map<String, Song> songDatabase;
+    private final RemoteTrackCache remoteCache;
+    private final IndexProgress progress;
+    private final TransferScheduler scheduler;
+    private final Map<String, BroadcastChannel> channels;
 
-    public ClientHandler(Socket clientSocket, Map<Integer, Song> songDatabase) {
+    public ClientHandler(Socket clientSocket, Map<String, Song> songDatabase, RemoteTrackCache remoteCache,
+                         IndexProgress progress, TransferScheduler scheduler,
+                         Map<String, BroadcastChannel> channels) {
         this.clientSocket = clientSocket;
         this.songDatabase = songDatabase;
+        this.remoteCache = remoteCache;
+        this.progress = progress;
+        this.scheduler = scheduler;
+        this.channels = channels;
+    }
+
+    // Remote tracks come from the remote cache, fetching them on first use.
+    static InputStream openSong(Song song, RemoteTrackCache remoteCache) throws IOException {
+        if (song.isRemote()) {
+            return remoteCache.open(song);
+        }
+        return new FileInputStream(song.getFilePath());
+    }
+
+    // STREAM and DOWNLOAD share this copy loop; the scheduler shapes it by priority.
+    private void sendSong(Song song, TransferScheduler.Priority priority, OutputStream out) throws IOException {
+        try (InputStream fileIn = openSong(song, remoteCache);
+             TransferScheduler.Transfer transfer = scheduler.open(priority, song.getTitle())) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = fileIn.read(buffer)) > 0) {
+                transfer.write(out, buffer, 0, count);
+            }
+            out.flush();
+        }
+    }
+
+    // Send the channel from the shared ring buffer straight to the socket until the
+    // client disconnects or the channel drops it. Channel bytes count against the
+    // server-wide bandwidth limit like streams.
+    private void tune(BroadcastChannel channel) throws IOException {
+        OutputStream socketOut = clientSocket.getOutputStream();
+        BroadcastChannel.Subscriber subscriber = channel.subscribe(clientSocket);
+        try (TransferScheduler.Transfer transfer = scheduler.openChannel("channel " + channel.getName())) {
+            int count;
+            while ((count = channel.awaitData(subscriber, 16 * 1024)) > 0) {
+                transfer.write(socketOut, subscriber.sendBuffer(), subscriber.sendOffset(), count);
+                channel.advance(subscriber, count);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.unsubscribe(subscriber);
+        }
     }
 
     @Override
@@ -346,42 +561,56 @@ class ClientHandler implements Runnable {
                     String json = new Gson().toJson(songDatabase.values());
                     System.out.println("[Server] Sending song list...");
                     writer.println(json);
+                    // Second line: indexing progress, so clients know the list may grow.
+                    writer.println(progress.toJson(songDatabase.size()));
                 } else if (request.startsWith("STREAM")) {
                     String[] tokens = request.split(" ");
                     if (tokens.length >= 2) {
-                        int songId = Integer.parseInt(tokens[1]);
+                        String songId = tokens[1];
                         Song song = songDatabase.get(songId);
                         if (song != null) {
                             System.out.println("[Server] Streaming song id " + songId + ": " + song.getTitle());
-                            try (FileInputStream fileIn = new FileInputStream(song.getFilePath())) {
-                                byte[] buffer = new byte[4096];
-                                int count;
-                                while ((count = fileIn.read(buffer)) > 0) {
-                                    out.write(buffer, 0, count);
-                                }
-                                out.flush();
-                                System.out.println("[Server] Finished streaming song: " + song.getTitle());
-                            }
+                            sendSong(song, TransferScheduler.Priority.STREAM, out);
+                            System.out.println("[Server] Finished streaming song: " + song.getTitle());
                         }
                     }
                 } else if (request.startsWith("DOWNLOAD")) {
                     String[] tokens = request.split(" ");
                     if (tokens.length >= 2) {
-                        int songId = Integer.parseInt(tokens[1]);
+                        String songId = tokens[1];
                         Song song = songDatabase.get(songId);
                         if (song != null) {
                             System.out.println("[Server] Download requested for song: " + song.getTitle());
-                            try (FileInputStream fileIn = new FileInputStream(song.getFilePath())) {
-                                byte[] buffer = new byte[4096];
-                                int count;
-                                while ((count = fileIn.read(buffer)) > 0) {
-                                    out.write(buffer, 0, count);
-                                }
-                                out.flush();
-                                System.out.println("[Server] Finished sending file for song: " + song.getTitle());
-                            }
+                            sendSong(song, TransferScheduler.Priority.DOWNLOAD, out);
+                            System.out.println("[Server] Finished sending file for song: " + song.getTitle());
                         }
                     }
+                } else if (request.toUpperCase().startsWith("SEARCH")) {
+                    String query = request.length() > 6 ? request.substring(6).trim() : "";
+                    List<Song> matches = new ArrayList<>();
+                    for (Song song : songDatabase.values()) {
+                        if (song.matches(query)) matches.add(song);
+                    }
+                    System.out.println("[Server] Sending " + matches.size() + " search results for: " + query);
+                    writer.println(new Gson().toJson(matches));
+                } else if (request.toUpperCase().startsWith("TUNE")) {
+                    String[] tokens = request.split(" ");
+                    if (tokens.length >= 2) {
+                        BroadcastChannel channel = channels.get(tokens[1]);
+                        if (channel != null) {
+                            System.out.println("[Server] Client tuned in to channel " + channel.getName());
+                            tune(channel);
+                            System.out.println("[Server] Client left channel " + channel.getName());
+                        }
+                    }
+                } else if (request.equalsIgnoreCase("CHANNELS")) {
+                    Map<String, Integer> listeners = new TreeMap<>();
+                    for (BroadcastChannel channel : channels.values()) {
+                        listeners.put(channel.getName(), channel.getListenerCount());
+                    }
+                    writer.println(new Gson().toJson(listeners));
+                } else if (request.equalsIgnoreCase("STATS")) {
+                    writer.println(scheduler.statsJson());
                 }
                 break; // End after one command.
             }
@@ -0,0 +1,304 @@
+// RemoteDownloader.java
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Fetches remote audio files into a local directory. Interrupted transfers are
+// kept as ".part" files and resumed with HTTP Range requests; local copies are
+// revalidated with ETag / Last-Modified so unchanged files are not fetched again.
+class RemoteDownloader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TIMEOUT_MS = 10000;
+
+    private final File downloadDir;
+    private final File stateFile;
+    // Map of URL -> validators of the last response seen for it.
+    private final Map<String, RemoteState> states = new ConcurrentHashMap<>();
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    public RemoteDownloader(File downloadDir) {
+        this.downloadDir = downloadDir;
+        this.stateFile = new File(downloadDir, ".remote_state.json");
+        if (!downloadDir.exists()) {
+            downloadDir.mkdirs();
+        }
+        loadState();
+    }
+
+    // Told about the file a fetch is writing and its length as bytes arrive.
+    interface FetchListener {
+        void writing(File file, long length);
+    }
+
+    // Fetch the URL into its local copy and return that file. The listener hears
+    // about every write, so readers can follow the .part file while it grows. An
+    // interrupted or truncated transfer throws and keeps the .part file, and the
+    // next fetch resumes from it. An up-to-date local copy is returned as is.
+    public File fetch(String urlStr, FetchListener listener) throws IOException {
+        Transfer transfer = startTransfer(urlStr);
+        if (transfer == null) {
+            return localFileFor(urlStr);
+        }
+        long received = transfer.append ? transfer.partFile.length() : 0;
+        try (InputStream in = transfer.connection.getInputStream();
+             OutputStream partOut = new FileOutputStream(transfer.partFile, transfer.append)) {
+            listener.writing(transfer.partFile, received);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                partOut.write(buffer, 0, count);
+                received += count;
+                listener.writing(transfer.partFile, received);
+            }
+        } finally {
+            transfer.connection.disconnect();
+        }
+        if (transfer.expectedLength >= 0 && received != transfer.expectedLength) {
+            throw new IOException("Remote transfer ended after " + received + " of " +
+                                  transfer.expectedLength + " bytes");
+        }
+        Files.move(transfer.partFile.toPath(), transfer.localFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("[Server] Downloaded remote file to: " + transfer.localFile.getAbsolutePath());
+        return transfer.localFile;
+    }
+
+    // Fetch only the first probeBytes of the URL, along with its total length and
+    // validators, without touching the local copy.
+    public RemoteProbe probe(String urlStr, int probeBytes) throws IOException {
+        HttpURLConnection connection = connect(urlStr);
+        connection.setRequestProperty("Range", "bytes=0-" + (probeBytes - 1));
+        try {
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("HTTP " + status + " for " + urlStr);
+            }
+            long totalLength = connection.getContentLengthLong();
+            String contentRange = connection.getHeaderField("Content-Range");
+            if (status == HttpURLConnection.HTTP_PARTIAL && contentRange != null && contentRange.contains("/")) {
+                try {
+                    totalLength = Long.parseLong(contentRange.substring(contentRange.indexOf('/') + 1).trim());
+                } catch (NumberFormatException e) {
+                    totalLength = -1;
+                }
+            }
+            ByteArrayOutputStream head = new ByteArrayOutputStream();
+            try (InputStream in = connection.getInputStream()) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int count;
+                // Servers that ignore Range send the whole body; stop after probeBytes.
+                while (head.size() < probeBytes && (count = in.read(buffer, 0, Math.min(buffer.length, probeBytes - head.size()))) > 0) {
+                    head.write(buffer, 0, count);
+                }
+            }
+            return new RemoteProbe(head.toByteArray(), totalLength,
+                                   connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // True if the validators seen by the probe differ from those of the local copy.
+    public boolean isStale(String urlStr, RemoteProbe probe) {
+        RemoteState known = states.get(urlStr);
+        if (known == null) {
+            return false;
+        }
+        return (probe.etag != null && !probe.etag.equals(known.etag)) ||
+               (probe.etag == null && probe.lastModified != null && !probe.lastModified.equals(known.lastModified));
+    }
+
+    // Sends the request for the URL and returns the open transfer, or null if the
+    // local copy is already up to date.
+    private Transfer startTransfer(String urlStr) throws IOException {
+        File localFile = localFileFor(urlStr);
+        File partFile = new File(downloadDir, localFile.getName() + ".part");
+        RemoteState known = states.get(urlStr);
+
+        HttpURLConnection connection = connect(urlStr);
+        long resumeFrom = 0;
+        if (localFile.exists() && known != null) {
+            // Conditional request: only transfer the body if the remote file changed.
+            addConditionalHeaders(connection, known);
+        } else if (partFile.exists() && known != null && known.hasValidator()) {
+            resumeFrom = partFile.length();
+            connection.setRequestProperty("Range", "bytes=" + resumeFrom + "-");
+            // If-Range makes the server send the full body if the file changed meanwhile.
+            connection.setRequestProperty("If-Range", known.etag != null ? known.etag : known.lastModified);
+        }
+
+        int status = connection.getResponseCode();
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            connection.disconnect();
+            return null;
+        }
+        if (status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_PARTIAL) {
+            connection.disconnect();
+            throw new IOException("HTTP " + status + " for " + urlStr);
+        }
+        boolean append = status == HttpURLConnection.HTTP_PARTIAL && resumeFrom > 0 &&
+                         contentRangeStart(connection) == resumeFrom;
+        if (status == HttpURLConnection.HTTP_PARTIAL && !append) {
+            connection.disconnect();
+            throw new IOException("Unexpected Content-Range for " + urlStr + ": " +
+                                  connection.getHeaderField("Content-Range"));
+        }
+
+        // Record validators before streaming so an interrupted transfer can resume.
+        states.put(urlStr, new RemoteState(connection.getHeaderField("ETag"),
+                                           connection.getHeaderField("Last-Modified")));
+        saveState();
+
+        System.out.println("[Server] Downloading remote file: " + urlStr +
+                           (append ? " (resuming at byte " + resumeFrom + ")" : ""));
+        return new Transfer(connection, localFile, partFile, append, expectedLength(connection, resumeFrom, append));
+    }
+
+    private HttpURLConnection connect(String urlStr) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(urlStr).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        return connection;
+    }
+
+    // Local destination for a URL: a hash of the whole URL plus the file extension,
+    // so URLs ending in the same file name never share a local copy or .part file.
+    public File localFileFor(String urlStr) throws IOException {
+        String fileName = fileNameOf(urlStr);
+        int dot = fileName.lastIndexOf('.');
+        String extension = dot >= 0 ? fileName.substring(dot).toLowerCase() : "";
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(urlStr.getBytes(StandardCharsets.UTF_8));
+            return new File(downloadDir, SongFingerprinter.toHex(hash).substring(0, 16) + extension);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    // The last path segment of the URL, as shown to clients.
+    public static String fileNameOf(String urlStr) throws IOException {
+        String path = new URL(urlStr).getPath();
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static void addConditionalHeaders(HttpURLConnection connection, RemoteState state) {
+        if (state.etag != null) {
+            connection.setRequestProperty("If-None-Match", state.etag);
+        }
+        if (state.lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", state.lastModified);
+        }
+    }
+
+    // Size of the complete file, from Content-Range or Content-Length; -1 if unknown.
+    private static long expectedLength(HttpURLConnection connection, long resumeFrom, boolean append) {
+        long contentLength = connection.getContentLengthLong();
+        if (!append) {
+            return contentLength;
+        }
+        String range = connection.getHeaderField("Content-Range");
+        if (range != null && range.contains("/")) {
+            try {
+                return Long.parseLong(range.substring(range.indexOf('/') + 1).trim());
+            } catch (NumberFormatException ignore) {
+                // "*": total unknown, fall back to Content-Length.
+            }
+        }
+        return contentLength < 0 ? -1 : resumeFrom + contentLength;
+    }
+
+    // Parses the first byte position out of "Content-Range: bytes start-end/total".
+    private static long contentRangeStart(HttpURLConnection connection) {
+        String range = connection.getHeaderField("Content-Range");
+        if (range == null || !range.startsWith("bytes ")) return -1;
+        int dash = range.indexOf('-');
+        try {
+            return Long.parseLong(range.substring(6, dash).trim());
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private void loadState() {
+        if (!stateFile.exists()) {
+            return;
+        }
+        try (Reader reader = new FileReader(stateFile)) {
+            java.lang.reflect.Type mapType = new TypeToken<Map<String, RemoteState>>() {}.getType();
+            Map<String, RemoteState> loaded = gson.fromJson(reader, mapType);
+            if (loaded != null) {
+                states.putAll(loaded);
+            }
+        } catch (Exception e) {
+            System.err.println("[Server] Ignoring unreadable " + stateFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private synchronized void saveState() {
+        try (Writer writer = new FileWriter(stateFile)) {
+            gson.toJson(states, writer);
+        } catch (IOException e) {
+            System.err.println("[Server] Error saving " + stateFile.getName() + ":");
+            e.printStackTrace();
+        }
+    }
+
+    // Result of a partial probe of a remote file.
+    static class RemoteProbe {
+        final byte[] head;
+        final long totalLength;   // -1 if unknown
+        final String etag;
+        final String lastModified;
+
+        RemoteProbe(byte[] head, long totalLength, String etag, String lastModified) {
+            this.head = head;
+            this.totalLength = totalLength;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    // An open HTTP response and the local files it is written to.
+    private static class Transfer {
+        final HttpURLConnection connection;
+        final File localFile;
+        final File partFile;
+        final boolean append;
+        final long expectedLength;   // -1 if unknown
+
+        Transfer(HttpURLConnection connection, File localFile, File partFile, boolean append, long expectedLength) {
+            this.connection = connection;
+            this.localFile = localFile;
+            this.partFile = partFile;
+            this.append = append;
+            this.expectedLength = expectedLength;
+        }
+    }
+
+    // Cache validators returned by the remote server for one URL.
+    private static class RemoteState {
+        private String etag;
+        private String lastModified;
+
+        RemoteState(String etag, String lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        boolean hasValidator() {
+            return etag != null || lastModified != null;
+        }
+    }
+}
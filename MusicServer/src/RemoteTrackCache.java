@@ -0,0 +1,220 @@
+// RemoteTrackCache.java
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Bounded local cache for remote tracks. Tracks are only fetched the first time a
+// client asks for them. A fetch runs on its own thread, at most
+// MAX_PARALLEL_FETCHES at a time. Every client asking for the track meanwhile reads
+// the growing .part file, so a track is downloaded once however many clients want
+// it. Least recently used files are evicted once the cache grows beyond maxBytes.
+class RemoteTrackCache {
+
+    // Upstream transfers at once, as in the parallel OneDrive download pool.
+    private static final int MAX_PARALLEL_FETCHES = 4;
+
+    private final RemoteDownloader downloader;
+    private final long maxBytes;
+    // Cached file -> size, in access order (eldest first).
+    private final LinkedHashMap<File, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    // Cache file name -> fetch in progress for it.
+    private final Map<String, Fill> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService fetchPool = Executors.newFixedThreadPool(MAX_PARALLEL_FETCHES, task -> {
+        Thread thread = new Thread(task, "remote-fetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RemoteTrackCache(File cacheDir, long maxBytes) {
+        this.downloader = new RemoteDownloader(cacheDir);
+        this.maxBytes = maxBytes;
+        File[] cached = cacheDir.listFiles((dir, name) -> !name.startsWith(".") && !name.endsWith(".part"));
+        if (cached != null) {
+            // Seed the LRU order from modification times left by earlier runs.
+            Arrays.sort(cached, Comparator.comparingLong(File::lastModified));
+            for (File file : cached) {
+                entries.put(file, file.length());
+                totalBytes += file.length();
+            }
+        }
+        evict(null);
+    }
+
+    // Probe a remote track without downloading it. A cached copy that no longer
+    // matches the remote validators is dropped.
+    public RemoteDownloader.RemoteProbe probe(String urlStr, int probeBytes) throws IOException {
+        RemoteDownloader.RemoteProbe probe = downloader.probe(urlStr, probeBytes);
+        if (downloader.isStale(urlStr, probe)) {
+            File localFile = downloader.localFileFor(urlStr);
+            System.out.println("[Server] Remote file changed, dropping cached copy: " + localFile.getName());
+            synchronized (this) {
+                remove(localFile);
+            }
+        }
+        return probe;
+    }
+
+    public File localFileFor(String urlStr) throws IOException {
+        return downloader.localFileFor(urlStr);
+    }
+
+    // Open the audio of a remote song, from the cache if present.
+    public InputStream open(Song song) throws IOException {
+        String urlStr = song.getRemoteUrl();
+        File localFile = downloader.localFileFor(urlStr);
+        synchronized (this) {
+            if (entries.get(localFile) != null && localFile.exists()) {
+                System.out.println("[Server] Serving cached remote track: " + localFile.getName());
+                localFile.setLastModified(System.currentTimeMillis());
+                return new FileInputStream(localFile);
+            }
+        }
+        String cacheName = localFile.getName();
+        Fill started = new Fill();
+        Fill fill = inFlight.putIfAbsent(cacheName, started);
+        if (fill != null) {
+            System.out.println("[Server] Remote track already being fetched, following it: " + urlStr);
+        } else {
+            fill = started;
+            startFetch(urlStr, cacheName, fill);
+        }
+        return new FillInputStream(fill);
+    }
+
+    private void startFetch(String urlStr, String cacheName, Fill fill) {
+        fetchPool.execute(() -> {
+            try {
+                File finished = downloader.fetch(urlStr, fill::writing);
+                admit(finished);
+                fill.finish(finished);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[Server] Fetching remote track failed: " + urlStr + ": " + e.getMessage());
+                fill.fail(e instanceof IOException ? (IOException) e : new IOException(e));
+            } finally {
+                inFlight.remove(cacheName, fill);
+            }
+        });
+    }
+
+    private synchronized void admit(File file) {
+        Long previous = entries.put(file, file.length());
+        totalBytes += file.length() - (previous == null ? 0 : previous);
+        evict(file);
+    }
+
+    // Evict least recently used files until the cache fits, keeping the given file.
+    private void evict(File keep) {
+        Iterator<Map.Entry<File, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<File, Long> eldest = it.next();
+            if (eldest.getKey().equals(keep)) continue;
+            it.remove();
+            totalBytes -= eldest.getValue();
+            eldest.getKey().delete();
+            System.out.println("[Server] Evicted remote track from cache: " + eldest.getKey().getName());
+        }
+    }
+
+    private void remove(File file) {
+        Long size = entries.remove(file);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        file.delete();
+    }
+
+    // Progress of one fetch, shared by the clients reading it.
+    private static class Fill {
+        private File file;
+        private long length;
+        private boolean done;
+        private IOException error;
+
+        synchronized void writing(File file, long length) {
+            this.file = file;
+            this.length = length;
+            notifyAll();
+        }
+
+        synchronized void finish(File finished) {
+            file = finished;
+            length = finished.length();
+            done = true;
+            notifyAll();
+        }
+
+        synchronized void fail(IOException error) {
+            this.error = error;
+            notifyAll();
+        }
+
+        // Wait until bytes past position exist and return how many, or -1 at the end.
+        synchronized long awaitBytes(long position) throws IOException {
+            try {
+                while (length <= position && !done && error == null) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for remote track", e);
+            }
+            if (length > position) return length - position;
+            if (error != null) throw error;
+            return -1;
+        }
+
+        synchronized File file() {
+            return file;
+        }
+    }
+
+    // Reads a track while it is being fetched, following the .part file as it grows.
+    // The file is read through a FileChannel, which keeps working after the fetch
+    // renames the .part file (FileChannel opens with delete sharing on Windows too).
+    private static class FillInputStream extends InputStream {
+        private final Fill fill;
+        private FileChannel channel;
+        private long position;
+
+        FillInputStream(Fill fill) {
+            this.fill = fill;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            long available = fill.awaitBytes(position);
+            if (available < 0) return -1;
+            if (channel == null) {
+                channel = FileChannel.open(fill.file().toPath(), StandardOpenOption.READ);
+            }
+            int count = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, available)), position);
+            if (count > 0) position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) channel.close();
+        }
+    }
+}
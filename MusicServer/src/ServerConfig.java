@@ -0,0 +1,187 @@
+// ServerConfig.java
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Server settings, read from a properties file and overridden by command line
+// options. Without a config file or options the server behaves as before: it
+// asks for folders with a Swing chooser and listens on port 5555.
+//
+//   --config <file>            properties file (default: music_server.properties if present)
+//   --headless                 never open Swing dialogs; roots must be configured
+//   --port <n>                 listen port
+//   --root <dir>               library root, may be repeated
+//   --remote-list <file>       list of remote track URLs (default: onedrive_list.txt)
+//   --cache-dir <dir>          local cache for remote tracks
+//   --cache-mb <n>             size limit of the remote track cache
+//   --limit-total-kbps <n>     bandwidth of all transfers and channels together, in KB/s (0 = unlimited)
+//   --limit-stream-kbps <n>    bandwidth of one STREAM connection, in KB/s (0 = unlimited)
+//   --limit-download-kbps <n>  bandwidth of one DOWNLOAD connection, in KB/s (0 = unlimited)
+//   --channel.<name> <ids>     broadcast channel playing the comma-separated song IDs
+//   --fingerprint-cache <file> cache of song fingerprints (default: fingerprint_cache.json)
+//   --index-file <file>        where the indexed song database is saved (default: indexed_music.json)
+//
+// The properties file uses the same names without the leading dashes; "roots"
+// holds several directories separated by the platform path separator.
+class ServerConfig {
+
+    static final String DEFAULT_CONFIG_FILE = "music_server.properties";
+    // Keys taking a value, besides "root"/"roots", "config" and "channel.<name>".
+    private static final Set<String> VALUE_KEYS = new HashSet<>(Arrays.asList(
+            "headless", "port", "remote-list", "cache-dir", "cache-mb",
+            "limit-total-kbps", "limit-stream-kbps", "limit-download-kbps",
+            "fingerprint-cache", "index-file"));
+
+    private final Properties properties = new Properties();
+    private final List<File> roots = new ArrayList<>();
+
+    private ServerConfig() {
+    }
+
+    public static ServerConfig fromArgs(String[] args) throws IOException {
+        ServerConfig config = new ServerConfig();
+        String configFile = null;
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--config")) {
+                configFile = args[i + 1];
+            }
+        }
+        if (configFile == null && new File(DEFAULT_CONFIG_FILE).exists()) {
+            configFile = DEFAULT_CONFIG_FILE;
+        }
+        if (configFile != null) {
+            try (Reader reader = new FileReader(configFile)) {
+                config.properties.load(reader);
+            }
+            for (String key : config.properties.stringPropertyNames()) {
+                if (!key.equals("roots") && !isKnownKey(key)) {
+                    throw new IllegalArgumentException("Unknown setting in " + configFile + ": " + key);
+                }
+            }
+            System.out.println("[Server] Loaded configuration from " + configFile);
+        }
+        String rootList = config.properties.getProperty("roots", "").trim();
+        if (!rootList.isEmpty()) {
+            for (String root : rootList.split(File.pathSeparator)) {
+                if (!root.trim().isEmpty()) config.roots.add(new File(root.trim()));
+            }
+        }
+
+        boolean cliRoots = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--headless")) {
+                config.properties.setProperty("headless", "true");
+                continue;
+            }
+            if (!arg.startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Unknown or incomplete option: " + arg);
+            }
+            String value = args[++i];
+            String key = arg.substring(2);
+            if (key.equals("root")) {
+                // Roots given on the command line replace those of the config file.
+                if (!cliRoots) config.roots.clear();
+                cliRoots = true;
+                config.roots.add(new File(value));
+            } else if (isKnownKey(key)) {
+                config.properties.setProperty(key, value);
+            } else if (!key.equals("config")) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        config.getPort();
+        config.getRemoteCacheBytes();
+        config.getTotalLimitBytes();
+        config.getStreamLimitBytes();
+        config.getDownloadLimitBytes();
+        return config;
+    }
+
+    // Headless when asked to, or when there is no display to show dialogs on.
+    public boolean isHeadless() {
+        return Boolean.parseBoolean(properties.getProperty("headless", "false")) ||
+               GraphicsEnvironment.isHeadless();
+    }
+
+    public int getPort() {
+        return getInt("port", 5555);
+    }
+
+    public List<File> getRoots() {
+        return roots;
+    }
+
+    public File getRemoteList() {
+        return new File(properties.getProperty("remote-list", "onedrive_list.txt"));
+    }
+
+    public File getRemoteCacheDir() {
+        return new File(properties.getProperty("cache-dir", "downloaded_onedrive"));
+    }
+
+    public File getFingerprintCache() {
+        return new File(properties.getProperty("fingerprint-cache", "fingerprint_cache.json"));
+    }
+
+    public File getIndexFile() {
+        return new File(properties.getProperty("index-file", "indexed_music.json"));
+    }
+
+    public long getRemoteCacheBytes() {
+        return getInt("cache-mb", 2048) * 1024L * 1024L;
+    }
+
+    public long getTotalLimitBytes() {
+        return getInt("limit-total-kbps", 0) * 1024L;
+    }
+
+    public long getStreamLimitBytes() {
+        return getInt("limit-stream-kbps", 0) * 1024L;
+    }
+
+    public long getDownloadLimitBytes() {
+        return getInt("limit-download-kbps", 0) * 1024L;
+    }
+
+    // Channel name -> song IDs, from the channel.<name> entries.
+    public Map<String, List<String>> getChannels() {
+        Map<String, List<String>> channels = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith("channel.") && key.length() > 8) {
+                List<String> songIds = new ArrayList<>();
+                for (String songId : Arrays.asList(properties.getProperty(key).split(","))) {
+                    if (!songId.trim().isEmpty()) songIds.add(songId.trim());
+                }
+                channels.put(key.substring(8), songIds);
+            }
+        }
+        return channels;
+    }
+
+    private static boolean isKnownKey(String key) {
+        return VALUE_KEYS.contains(key) || (key.startsWith("channel.") && key.length() > 8);
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+        }
+    }
+}
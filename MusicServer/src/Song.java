@@ -0,0 +1,65 @@
+// Song.java
+import java.io.Serializable;
+
+// Data class representing a song and its metadata.
+class Song implements Serializable {
+    private String id;
+    private String title;
+    private String album;
+    private String genre;
+    private String filePath;
+    // Extra metadata fields.
+    private String artist;
+    private String albumArtist;
+    private String year;
+    private int trackLength;   // in seconds
+    private String producers;
+    private String publisher;
+    private String fileName;
+    private String albumImageBase64;
+    // Source URL of a remote track; null for local files.
+    private String remoteUrl;
+
+    public Song(String id, String title, String album, String genre, String filePath,
+                String artist, String albumArtist, String year, int trackLength,
+                String producers, String publisher, String fileName, String albumImageBase64) {
+        this.id = id;
+        this.title = title;
+        this.album = album;
+        this.genre = genre;
+        this.filePath = filePath;
+        this.artist = artist;
+        this.albumArtist = albumArtist;
+        this.year = year;
+        this.trackLength = trackLength;
+        this.producers = producers;
+        this.publisher = publisher;
+        this.fileName = fileName;
+        this.albumImageBase64 = albumImageBase64;
+    }
+    public String getId() { return id; }
+    public String getTitle() { return title; }
+    public String getAlbum() { return album; }
+    public String getGenre() { return genre; }
+    public String getFilePath() { return filePath; }
+    public String getArtist() { return artist; }
+    public String getAlbumArtist() { return albumArtist; }
+    public String getYear() { return year; }
+    public int getTrackLength() { return trackLength; }
+    public String getProducers() { return producers; }
+    public String getPublisher() { return publisher; }
+    public String getFileName() { return fileName; }
+    public String getAlbumImageBase64() { return albumImageBase64; }
+    public String getRemoteUrl() { return remoteUrl; }
+    public boolean isRemote() { return remoteUrl != null; }
+    void setRemoteUrl(String remoteUrl) { this.remoteUrl = remoteUrl; }
+
+    // Case-insensitive match of the query against the descriptive fields.
+    public boolean matches(String query) {
+        String q = query.toLowerCase();
+        for (String field : new String[] { title, artist, album, albumArtist, genre, fileName }) {
+            if (field != null && field.toLowerCase().contains(q)) return true;
+        }
+        return false;
+    }
+}
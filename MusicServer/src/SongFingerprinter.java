@@ -0,0 +1,242 @@
+// SongFingerprinter.java
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Computes stable content fingerprints for audio files. The fingerprint is a hash
+// of the whole audio payload (ID3/APE tags, FLAC metadata blocks and non-audio
+// RIFF/AIFF chunks are skipped), so it depends on nothing but the file's own audio:
+// retagging a file, moving it to another folder or host, or indexing other files
+// does not change its song ID. Results are cached by path, size and mtime, so each
+// file is read in full once.
+class SongFingerprinter {
+
+    // Number of hex characters kept from the digest (64 bits).
+    private static final int ID_LENGTH = 16;
+
+    private final File cacheFile;
+    private final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final Gson gson = new Gson();
+
+    public SongFingerprinter(File cacheFile) {
+        this.cacheFile = cacheFile;
+        loadCache();
+    }
+
+    // Returns the fingerprint of the given file, reusing the cached value when the
+    // file has not changed since it was last fingerprinted.
+    public String fingerprint(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        long size = file.length();
+        long mtime = file.lastModified();
+        CacheEntry cached = cache.get(key);
+        if (cached != null && cached.size == size && cached.mtime == mtime && cached.payloadFingerprint != null) {
+            return cached.payloadFingerprint;
+        }
+        String fingerprint = computeFingerprint(file);
+        cache.put(key, new CacheEntry(size, mtime, fingerprint));
+        return fingerprint;
+    }
+
+    // Remote tracks are registered before their audio is fetched, so their ID is
+    // derived from the source URL instead of the content.
+    public String fingerprintRemote(String urlStr) {
+        MessageDigest digest = newDigest();
+        digest.update(("remote:" + urlStr).getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest()).substring(0, ID_LENGTH);
+    }
+
+    // Persist the fingerprint cache so the next start can skip unchanged files.
+    public void saveCache() {
+        try (Writer writer = new FileWriter(cacheFile)) {
+            gson.toJson(cache, writer);
+            System.out.println("[Server] Fingerprint cache saved to " + cacheFile.getName() +
+                               " (" + cache.size() + " entries)");
+        } catch (IOException e) {
+            System.err.println("[Server] Error saving " + cacheFile.getName() + ":");
+            e.printStackTrace();
+        }
+    }
+
+    private void loadCache() {
+        if (!cacheFile.exists()) {
+            return;
+        }
+        try (Reader reader = new FileReader(cacheFile)) {
+            java.lang.reflect.Type mapType = new TypeToken<Map<String, CacheEntry>>() {}.getType();
+            Map<String, CacheEntry> loaded = gson.fromJson(reader, mapType);
+            if (loaded != null) {
+                cache.putAll(loaded);
+            }
+            System.out.println("[Server] Loaded " + cache.size() + " cached fingerprints.");
+        } catch (Exception e) {
+            System.err.println("[Server] Ignoring unreadable " + cacheFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private String computeFingerprint(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long[] range = findAudioRange(raf, file.getName().toLowerCase());
+            long length = Math.max(0, range[1] - range[0]);
+
+            MessageDigest digest = newDigest();
+            digest.update(Long.toString(length).getBytes(StandardCharsets.US_ASCII));
+            hashRegion(raf, digest, range[0], length);
+            return toHex(digest.digest()).substring(0, ID_LENGTH);
+        }
+    }
+
+    // Returns {start, end} of the audio payload within the file.
+    private long[] findAudioRange(RandomAccessFile raf, String fileNameLower) throws IOException {
+        long fileLength = raf.length();
+        if (fileNameLower.endsWith(".wav")) {
+            long[] data = findChunk(raf, "RIFF", "data", false);
+            if (data != null) return data;
+        } else if (fileNameLower.endsWith(".aiff")) {
+            long[] data = findChunk(raf, "FORM", "SSND", true);
+            if (data != null) return data;
+        } else if (fileNameLower.endsWith(".flac")) {
+            long start = skipFlacMetadata(raf);
+            if (start > 0) return new long[] { start, fileLength };
+        }
+        // MP3 and AAC streams may carry ID3v2 at the head and ID3v1/APEv2 at the tail.
+        long start = skipId3v2(raf);
+        long end = fileLength;
+        end = stripId3v1(raf, start, end);
+        end = stripApeTag(raf, start, end);
+        return new long[] { start, end };
+    }
+
+    private long skipId3v2(RandomAccessFile raf) throws IOException {
+        long pos = 0;
+        byte[] header = new byte[10];
+        while (pos + 10 <= raf.length()) {
+            raf.seek(pos);
+            raf.readFully(header);
+            if (header[0] != 'I' || header[1] != 'D' || header[2] != '3') break;
+            int size = ((header[6] & 0x7F) << 21) | ((header[7] & 0x7F) << 14) |
+                       ((header[8] & 0x7F) << 7) | (header[9] & 0x7F);
+            boolean hasFooter = (header[5] & 0x10) != 0;
+            pos += 10 + size + (hasFooter ? 10 : 0);
+        }
+        return Math.min(pos, raf.length());
+    }
+
+    private long stripId3v1(RandomAccessFile raf, long start, long end) throws IOException {
+        if (end - start < 128) return end;
+        byte[] marker = new byte[3];
+        raf.seek(end - 128);
+        raf.readFully(marker);
+        return (marker[0] == 'T' && marker[1] == 'A' && marker[2] == 'G') ? end - 128 : end;
+    }
+
+    private long stripApeTag(RandomAccessFile raf, long start, long end) throws IOException {
+        if (end - start < 32) return end;
+        byte[] footer = new byte[32];
+        raf.seek(end - 32);
+        raf.readFully(footer);
+        if (!new String(footer, 0, 8, StandardCharsets.US_ASCII).equals("APETAGEX")) return end;
+        long tagSize = readIntLE(footer, 12) & 0xFFFFFFFFL;
+        boolean hasHeader = (readIntLE(footer, 20) & 0x80000000) != 0;
+        long total = tagSize + (hasHeader ? 32 : 0);
+        return (total <= end - start) ? end - total : end;
+    }
+
+    private long skipFlacMetadata(RandomAccessFile raf) throws IOException {
+        long pos = skipId3v2(raf);
+        byte[] magic = new byte[4];
+        if (pos + 4 > raf.length()) return -1;
+        raf.seek(pos);
+        raf.readFully(magic);
+        if (!new String(magic, StandardCharsets.US_ASCII).equals("fLaC")) return -1;
+        pos += 4;
+        byte[] blockHeader = new byte[4];
+        while (pos + 4 <= raf.length()) {
+            raf.seek(pos);
+            raf.readFully(blockHeader);
+            boolean last = (blockHeader[0] & 0x80) != 0;
+            int length = ((blockHeader[1] & 0xFF) << 16) | ((blockHeader[2] & 0xFF) << 8) | (blockHeader[3] & 0xFF);
+            pos += 4 + length;
+            if (last) break;
+        }
+        return Math.min(pos, raf.length());
+    }
+
+    // Walks a RIFF (little-endian) or FORM (big-endian) container looking for a chunk.
+    private long[] findChunk(RandomAccessFile raf, String container, String chunkId,
+                             boolean bigEndian) throws IOException {
+        if (raf.length() < 12) return null;
+        byte[] header = new byte[8];
+        raf.seek(0);
+        raf.readFully(header);
+        if (!new String(header, 0, 4, StandardCharsets.US_ASCII).equals(container)) return null;
+        long pos = 12;
+        while (pos + 8 <= raf.length()) {
+            raf.seek(pos);
+            raf.readFully(header);
+            String id = new String(header, 0, 4, StandardCharsets.US_ASCII);
+            long size = (bigEndian ? readIntBE(header, 4) : readIntLE(header, 4)) & 0xFFFFFFFFL;
+            if (id.equals(chunkId)) {
+                return new long[] { pos + 8, Math.min(pos + 8 + size, raf.length()) };
+            }
+            pos += 8 + size + (size & 1);
+        }
+        return null;
+    }
+
+    private void hashRegion(RandomAccessFile raf, MessageDigest digest, long offset, long length) throws IOException {
+        byte[] buffer = new byte[8192];
+        raf.seek(offset);
+        long remaining = length;
+        while (remaining > 0) {
+            int count = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (count < 0) break;
+            digest.update(buffer, 0, count);
+            remaining -= count;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    private static int readIntLE(byte[] b, int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) | ((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24);
+    }
+
+    private static int readIntBE(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    // Cached fingerprint for one path.
+    private static class CacheEntry {
+        private long size;
+        private long mtime;
+        // Named apart from the sampled "fingerprint" of older caches, which are ignored.
+        private String payloadFingerprint;
+
+        CacheEntry(long size, long mtime, String payloadFingerprint) {
+            this.size = size;
+            this.mtime = mtime;
+            this.payloadFingerprint = payloadFingerprint;
+        }
+    }
+}
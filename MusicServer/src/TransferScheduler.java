@@ -0,0 +1,197 @@
+// TransferScheduler.java
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Shapes outgoing song transfers with token buckets: one per connection and one
+// shared by the whole server. Real-time STREAM transfers take precedence on the
+// shared bucket; DOWNLOAD transfers only get the bandwidth streams leave over.
+// A limit of 0 means unlimited.
+class TransferScheduler {
+
+    enum Priority { STREAM, DOWNLOAD }
+
+    private final TokenBucket total;
+    private final long streamBytesPerSecond;
+    private final long downloadBytesPerSecond;
+    // Number of STREAM transfers currently waiting for shared tokens.
+    private int waitingStreams;
+    private final Set<Transfer> active = ConcurrentHashMap.newKeySet();
+    private final RateMeter streamMeter = new RateMeter();
+    private final RateMeter downloadMeter = new RateMeter();
+
+    public TransferScheduler(long totalBytesPerSecond, long streamBytesPerSecond, long downloadBytesPerSecond) {
+        this.total = totalBytesPerSecond > 0 ? new TokenBucket(totalBytesPerSecond) : null;
+        this.streamBytesPerSecond = streamBytesPerSecond;
+        this.downloadBytesPerSecond = downloadBytesPerSecond;
+    }
+
+    // Start a transfer for one connection. Close it when the transfer ends.
+    public Transfer open(Priority priority, String description) {
+        long limit = priority == Priority.STREAM ? streamBytesPerSecond : downloadBytesPerSecond;
+        Transfer transfer = new Transfer(priority, description, limit > 0 ? new TokenBucket(limit) : null);
+        active.add(transfer);
+        return transfer;
+    }
+
+    // Start a broadcast channel transfer. Channels are already paced to real time,
+    // so there is no per-connection limit, but they share the server-wide bucket
+    // with STREAM priority.
+    public Transfer openChannel(String description) {
+        Transfer transfer = new Transfer(Priority.STREAM, description, null);
+        active.add(transfer);
+        return transfer;
+    }
+
+    // Current rates as JSON, for the STATS command.
+    public String statsJson() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("totalLimitBytesPerSec", total == null ? 0 : total.bytesPerSecond);
+        stats.put("streamLimitBytesPerSec", streamBytesPerSecond);
+        stats.put("downloadLimitBytesPerSec", downloadBytesPerSecond);
+        stats.put("streamBytesPerSec", streamMeter.rate());
+        stats.put("downloadBytesPerSec", downloadMeter.rate());
+        List<Map<String, Object>> transfers = new ArrayList<>();
+        for (Transfer transfer : active) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("priority", transfer.priority.name());
+            entry.put("song", transfer.description);
+            entry.put("bytesSent", transfer.bytesSent);
+            entry.put("bytesPerSec", transfer.meter.rate());
+            transfers.add(entry);
+        }
+        stats.put("activeTransfers", transfers);
+        return new Gson().toJson(stats);
+    }
+
+    private void acquireTotal(int bytes, Priority priority) throws InterruptedException {
+        if (total == null) {
+            return;
+        }
+        boolean stream = priority == Priority.STREAM;
+        synchronized (this) {
+            if (stream) waitingStreams++;
+            try {
+                while (true) {
+                    if (stream || waitingStreams == 0) {
+                        long waitNanos = total.tryTake(bytes);
+                        if (waitNanos == 0) return;
+                        TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                    } else {
+                        // Downloads yield until no stream is waiting for tokens.
+                        wait(10);
+                    }
+                }
+            } finally {
+                if (stream) {
+                    waitingStreams--;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    // One shaped transfer on one connection.
+    class Transfer implements AutoCloseable {
+        private final Priority priority;
+        private final String description;
+        private final TokenBucket connectionBucket;
+        private final RateMeter meter = new RateMeter();
+        private volatile long bytesSent;
+
+        private Transfer(Priority priority, String description, TokenBucket connectionBucket) {
+            this.priority = priority;
+            this.description = description;
+            this.connectionBucket = connectionBucket;
+        }
+
+        // Write the bytes once both the connection and the shared bucket allow it.
+        public void write(OutputStream out, byte[] buffer, int offset, int length) throws IOException {
+            try {
+                if (connectionBucket != null) {
+                    long waitNanos;
+                    while ((waitNanos = connectionBucket.tryTake(length)) > 0) {
+                        TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    }
+                }
+                acquireTotal(length, priority);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Transfer interrupted", e);
+            }
+            out.write(buffer, offset, length);
+            bytesSent += length;
+            meter.record(length);
+            (priority == Priority.STREAM ? streamMeter : downloadMeter).record(length);
+        }
+
+        @Override
+        public void close() {
+            active.remove(this);
+        }
+    }
+
+    // Token bucket that may go into debt by one write, so writes larger than the
+    // burst size still pass; the next write then waits until the debt is repaid.
+    private static class TokenBucket {
+        private final long bytesPerSecond;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            // Allow bursts of a quarter second, but at least 16 KB.
+            this.capacity = Math.max(bytesPerSecond / 4.0, 16 * 1024);
+            this.tokens = capacity;
+        }
+
+        // Take the bytes and return 0, or return the nanoseconds until it is possible.
+        synchronized long tryTake(int bytes) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * bytesPerSecond / 1e9);
+            lastRefill = now;
+            if (tokens >= 0) {
+                tokens -= bytes;
+                return 0;
+            }
+            return Math.max(1, (long) (-tokens * 1e9 / bytesPerSecond));
+        }
+    }
+
+    // Bytes per second averaged over the last few whole seconds.
+    private static class RateMeter {
+        private static final int WINDOW_SECONDS = 5;
+        private final long[] bytes = new long[WINDOW_SECONDS];
+        private final long[] seconds = new long[WINDOW_SECONDS];
+
+        synchronized void record(int count) {
+            long second = System.nanoTime() / 1_000_000_000L;
+            int slot = (int) (second % WINDOW_SECONDS);
+            if (seconds[slot] != second) {
+                seconds[slot] = second;
+                bytes[slot] = 0;
+            }
+            bytes[slot] += count;
+        }
+
+        // The current second is still filling up, so only completed seconds count.
+        synchronized long rate() {
+            long now = System.nanoTime() / 1_000_000_000L;
+            long sum = 0;
+            for (int i = 0; i < WINDOW_SECONDS; i++) {
+                long age = now - seconds[i];
+                if (age >= 1 && age < WINDOW_SECONDS) sum += bytes[i];
+            }
+            return sum / (WINDOW_SECONDS - 1);
+        }
+    }
+}